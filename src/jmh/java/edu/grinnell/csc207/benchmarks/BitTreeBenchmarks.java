@@ -0,0 +1,205 @@
+package edu.grinnell.csc207.benchmarks;
+
+import edu.grinnell.csc207.util.BitTree;
+import edu.grinnell.csc207.util.PatriciaBitTree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the basic bit tree operations across depths, fill
+ * ratios, and representations.
+ *
+ * @author Slok Rajbhandari
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BitTreeBenchmarks {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The most keys we store in a tree, however deep.
+   */
+  static final int MAX_KEYS = 1 << 16;
+
+  // +------------+--------------------------------------------------
+  // | Parameters |
+  // +------------+
+
+  /**
+   * The depth of the tree.
+   */
+  @Param({"6", "8", "16", "32", "64"})
+  int depth;
+
+  /**
+   * The fraction of possible keys present, capped at MAX_KEYS keys.
+   */
+  @Param({"0.25", "1.0"})
+  double fill;
+
+  /**
+   * The representation: "auto" for BitTree.create, "linked" for
+   * BitTree, or "patricia" for PatriciaBitTree.
+   */
+  @Param({"auto", "linked", "patricia"})
+  String kind;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The keys in the tree, in random order.
+   */
+  long[] keys;
+
+  /**
+   * The CSV form of the tree.
+   */
+  byte[] csv;
+
+  /**
+   * The tree.
+   */
+  BitTree<String> tree;
+
+  /**
+   * The index of the next key to use.
+   */
+  int next;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Create an empty tree of the chosen kind.
+   *
+   * @return
+   *   The new tree.
+   */
+  BitTree<String> newTree() {
+    switch (kind) {
+      case "linked":
+        return new BitTree<>(depth);
+      case "patricia":
+        return new PatriciaBitTree<>(depth);
+      default:
+        return BitTree.create(depth);
+    } // switch
+  } // newTree()
+
+  /**
+   * Get the next key, cycling through all of them.
+   *
+   * @return
+   *   A key in the tree.
+   */
+  long nextKey() {
+    if (++next == keys.length) {
+      next = 0;
+    } // if
+    return keys[next];
+  } // nextKey()
+
+  // +-------+-------------------------------------------------------
+  // | Setup |
+  // +-------+
+
+  /**
+   * Build the tree and its CSV form.
+   */
+  @Setup
+  public void setup() {
+    Random random = new Random(207);
+    double possible = Math.pow(2, depth);
+    int count = (int) Math.max(1, Math.min(MAX_KEYS, possible * fill));
+    Set<Long> unique = new HashSet<>();
+    while (unique.size() < count) {
+      unique.add((depth == Long.SIZE) ? random.nextLong()
+          : random.nextLong() & ((1L << depth) - 1));
+    } // while
+    keys = unique.stream().mapToLong(Long::longValue).toArray();
+
+    tree = newTree();
+    for (long key : keys) {
+      tree.set(key, "v" + key);
+    } // for
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PrintWriter pen = new PrintWriter(out);
+    tree.dump(pen);
+    pen.flush();
+    csv = out.toByteArray();
+  } // setup()
+
+  // +------------+--------------------------------------------------
+  // | Benchmarks |
+  // +------------+
+
+  /**
+   * Look up a key that is present.
+   *
+   * @return
+   *   The value found.
+   */
+  @Benchmark
+  public String get() {
+    return tree.get(nextKey());
+  } // get()
+
+  /**
+   * Replace the value of a key that is present.
+   */
+  @Benchmark
+  public void set() {
+    tree.set(nextKey(), "new");
+  } // set()
+
+  /**
+   * Load a whole tree from CSV.
+   *
+   * @return
+   *   The loaded tree.
+   */
+  @Benchmark
+  public BitTree<String> load() {
+    BitTree<String> loaded = newTree();
+    loaded.load(new ByteArrayInputStream(csv));
+    return loaded;
+  } // load()
+
+  /**
+   * Dump a whole tree as CSV.
+   */
+  @Benchmark
+  public void dump() {
+    PrintWriter pen = new PrintWriter(Writer.nullWriter());
+    tree.dump(pen);
+    pen.flush();
+  } // dump()
+} // class BitTreeBenchmarks
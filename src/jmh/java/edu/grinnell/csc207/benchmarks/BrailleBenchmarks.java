@@ -0,0 +1,193 @@
+package edu.grinnell.csc207.benchmarks;
+
+import edu.grinnell.csc207.util.BrailleAsciiTables;
+import edu.grinnell.csc207.util.BrailleCells;
+import edu.grinnell.csc207.util.BrailleTranscoder;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of conversions between ASCII, Braille, and Unicode on
+ * texts of various sizes.
+ *
+ * @author Slok Rajbhandari
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BrailleBenchmarks {
+  // +------------+--------------------------------------------------
+  // | Parameters |
+  // +------------+
+
+  /**
+   * The number of characters in the text: a line, a page, a book.
+   */
+  @Param({"80", "4096", "1048576"})
+  int size;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The ASCII text.
+   */
+  String text;
+
+  /**
+   * The text as characters.
+   */
+  char[] letters;
+
+  /**
+   * The text as Braille bit strings.
+   */
+  String bits;
+
+  /**
+   * The text as one cell per byte.
+   */
+  byte[] cells;
+
+  /**
+   * The text as packed cells.
+   */
+  BrailleCells packed;
+
+  /**
+   * Space for converted characters.
+   */
+  char[] output;
+
+  // +-------+-------------------------------------------------------
+  // | Setup |
+  // +-------+
+
+  /**
+   * Build a random text of words and its Braille forms.
+   */
+  @Setup
+  public void setup() {
+    Random random = new Random(207);
+    StringBuilder builder = new StringBuilder(size);
+    while (builder.length() < size) {
+      builder.append((random.nextInt(6) == 0) ? ' ' : (char) ('a' + random.nextInt(26)));
+    } // while
+    text = builder.toString();
+    letters = text.toCharArray();
+    cells = new byte[size];
+    BrailleAsciiTables.toBraille(letters, 0, size, cells, 0);
+    packed = BrailleCells.of(cells, 0, size);
+    bits = packed.toBits();
+    output = new char[size];
+  } // setup()
+
+  // +------------+--------------------------------------------------
+  // | Benchmarks |
+  // +------------+
+
+  /**
+   * Convert the text one character at a time.
+   *
+   * @param bh
+   *   Consumes the results.
+   */
+  @Benchmark
+  public void toBrailleByChar(Blackhole bh) {
+    for (int i = 0; i < size; i++) {
+      bh.consume(BrailleAsciiTables.toBraille(text.charAt(i)));
+    } // for
+  } // toBrailleByChar(Blackhole)
+
+  /**
+   * Convert the text to cells in bulk.
+   *
+   * @return
+   *   The cells.
+   */
+  @Benchmark
+  public byte[] toBrailleBulk() {
+    BrailleAsciiTables.toBraille(letters, 0, size, cells, 0);
+    return cells;
+  } // toBrailleBulk()
+
+  /**
+   * Convert the text to packed cells.
+   *
+   * @return
+   *   The cells.
+   */
+  @Benchmark
+  public BrailleCells toCells() {
+    return BrailleAsciiTables.toCells(text);
+  } // toCells()
+
+  /**
+   * Convert Braille bit strings to ASCII.
+   *
+   * @return
+   *   The text.
+   */
+  @Benchmark
+  public String toAsciiFromBits() {
+    return BrailleAsciiTables.toAscii(bits);
+  } // toAsciiFromBits()
+
+  /**
+   * Convert packed cells to ASCII.
+   *
+   * @return
+   *   The text.
+   */
+  @Benchmark
+  public String toAsciiFromPacked() {
+    return BrailleAsciiTables.toAscii(packed);
+  } // toAsciiFromPacked()
+
+  /**
+   * Convert cells to Unicode in bulk.
+   *
+   * @return
+   *   The Unicode characters.
+   */
+  @Benchmark
+  public char[] toUnicodeBulk() {
+    BrailleAsciiTables.toUnicode(cells, 0, size, output, 0);
+    return output;
+  } // toUnicodeBulk()
+
+  /**
+   * Convert the text to Unicode Braille through the streaming API.
+   *
+   * @return
+   *   The number of characters converted.
+   * @throws IOException
+   *   Never; the streams are in memory.
+   */
+  @Benchmark
+  public long transcodeUnicode() throws IOException {
+    return BrailleTranscoder.transcode(new StringReader(text), Writer.nullWriter(),
+        BrailleTranscoder.Target.UNICODE);
+  } // transcodeUnicode()
+} // class BrailleBenchmarks
@@ -1,8 +1,17 @@
 package edu.grinnell.csc207.main;
 
 import edu.grinnell.csc207.util.BrailleAsciiTables;
+import edu.grinnell.csc207.util.BrailleCells;
+import edu.grinnell.csc207.util.BrailleTranscoder;
 
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
 
 /**
  * Command-line utility for Braille and ASCII conversions.
@@ -16,22 +25,34 @@ public class BrailleASCII {
   // +------+
 
   /**
-   * The main entry point for the BrailleASCII utility. Takes two
-   * command-line parameters: the target encoding and the source
-   * text or bit string. Converts the source into the target encoding.
+   * The main entry point for the BrailleASCII utility. Takes the
+   * target encoding and the source text or bit string, and converts
+   * the source into the target encoding. Instead of a string, the
+   * source may be "-" (or omitted) to convert standard input, or
+   * "-f" followed by the names of files to convert.
    *
    * @param args
    *   Command-line arguments.
    *   args[0] specifies the target encoding ("braille", "ascii", or "unicode").
-   *   args[1] specifies the source text or bit string to convert.
+   *   args[1] specifies the source text or bit string to convert, "-",
+   *   or "-f".
+   *   args[2...] specify the files to convert when args[1] is "-f".
    */
   public static void main(String[] args) {
-    // Ensure correct number of arguments
-    if (args.length != 2) {
+    // Ensure correct number of arguments, and that -f names some files
+    if ((args.length < 1) || ((args.length != 2) && !isStreaming(args))
+        || ((args.length == 2) && args[1].equals("-f"))) {
       System.err.println("Use it like this: java BrailleASCII target string ");
+      System.err.println("               or java BrailleASCII target [-]");
+      System.err.println("               or java BrailleASCII target -f file ...");
       System.exit(1);
     } // end of if loop
 
+    if (isStreaming(args)) {
+      stream(args);
+      return;
+    } // end of if loop
+
     String target = args[0]; // Target encoding
     String source = args[1]; // Source text or bit string
     PrintWriter pen = new PrintWriter(System.out, true);
@@ -40,11 +61,11 @@ public class BrailleASCII {
       // Perform conversion based on the target encoding
       switch (target.toLowerCase()) {
         case "braille":
-          // Convert each character in the source text to Braille
-          for (char c : source.toCharArray()) {
-            pen.print(BrailleAsciiTables.toBraille(c));
-          } // end of for loop
-          pen.println();
+          // Convert the whole source to cells, then the cells to bits
+          char[] text = source.toCharArray();
+          byte[] braille = new byte[text.length];
+          BrailleAsciiTables.toBraille(text, 0, text.length, braille, 0);
+          pen.println(BrailleCells.of(braille, 0, braille.length).toBits());
           break;
 
         case "ascii":
@@ -53,14 +74,12 @@ public class BrailleASCII {
           break;
 
         case "unicode":
-          String brailleBits;
-          for (char c : source.toCharArray()) {
-            brailleBits = BrailleAsciiTables.toBraille(c);
-
-            // Convert the Braille bit string to Unicode
-            pen.print(BrailleAsciiTables.toUnicode(brailleBits));
-          } // end of for loop
-          pen.println();
+          // Convert the whole source to cells, then the cells to Unicode
+          char[] letters = source.toCharArray();
+          byte[] cells = new byte[letters.length];
+          BrailleAsciiTables.toBraille(letters, 0, letters.length, cells, 0);
+          BrailleAsciiTables.toUnicode(cells, 0, cells.length, letters, 0);
+          pen.println(letters);
           break;
 
         default:
@@ -75,4 +94,56 @@ public class BrailleASCII {
 
     pen.close(); // Close the output stream
   } // main(String[])
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Determine whether the arguments ask for standard input or files
+   * to be converted.
+   *
+   * @param args
+   *   Command-line arguments.
+   * @return
+   *   True if the source is standard input or a list of files.
+   */
+  static boolean isStreaming(String[] args) {
+    return (args.length == 1)
+        || ((args.length == 2) && args[1].equals("-"))
+        || ((args.length >= 3) && args[1].equals("-f"));
+  } // isStreaming(String[])
+
+  /**
+   * Convert standard input or a list of files to standard output.
+   *
+   * @param args
+   *   Command-line arguments, as described for <code>main</code>.
+   */
+  static void stream(String[] args) {
+    BrailleTranscoder.Target target;
+    try {
+      target = BrailleTranscoder.Target.valueOf(args[0].toUpperCase());
+    } catch (IllegalArgumentException e) {
+      System.err.println("Unknown target: " + args[0]);
+      System.exit(1);
+      return;
+    } // try/catch
+
+    Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+    try {
+      if (args.length < 3) {
+        BrailleTranscoder.transcode(new InputStreamReader(System.in), out, target);
+      } else {
+        for (int i = 2; i < args.length; i++) {
+          try (Reader in = new FileReader(args[i])) {
+            BrailleTranscoder.transcode(in, out, target);
+          } // try
+        } // end of for loop
+      } // end of if loop
+    } catch (IOException | IndexOutOfBoundsException e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(1);
+    } // catched exception
+  } // stream(String[])
 } // class BrailleASCII
@@ -1,16 +1,65 @@
 package edu.grinnell.csc207.util;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
-import java.util.Scanner;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Trees intended to be used in storing mappings between fixed-length
  * sequences of bits and corresponding values.
  *
+ * @param <V>
+ *   The type of values stored in the tree.
+ *
  * @author Slok
  */
-public class BitTree {
+public class BitTree<V> implements Iterable<Map.Entry<Long, V>> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bytes read at a time when loading.
+   */
+  static final int LOAD_BUFFER_SIZE = 1 << 16;
+
+  /**
+   * The number of bytes of a file mapped at a time when loading.
+   */
+  static final long MAP_CHUNK_SIZE = 1L << 30;
+
+  /**
+   * The estimated bytes used by a branch: the branch itself and its
+   * array of two children, with compressed references.
+   */
+  static final long BRANCH_BYTES = 48;
+
+  // +---------------+-----------------------------------------------
+  // | Static fields |
+  // +---------------+
+
+  /**
+   * The largest depth for which <code>create</code> builds a
+   * <code>DenseBitTree</code>. May be set with the system property
+   * <code>bittree.denseThreshold</code>.
+   */
+  private static volatile int denseThreshold =
+      Integer.getInteger("bittree.denseThreshold", 12);
+
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
@@ -25,77 +74,546 @@ public class BitTree {
    * The root node of the tree. This node may be null if the tree
    * has not been initialized.
    */
-  private BitTreeNode root;
+  private Branch root;
+
+  /**
+   * The number of mappings in the tree.
+   */
+  private long size;
+
+  /**
+   * Converts values to and from text when loading and dumping.
+   */
+  private final BitTreeCodec<V> codec;
+
+  /**
+   * The distinct values loaded into the tree, or null if loading does
+   * not intern values or nothing has been loaded.
+   */
+  private volatile BitTreeValuePool<V> valuePool;
+
+  /**
+   * Whether loads intern their values.
+   */
+  private volatile boolean interning;
+
+  /**
+   * The statistics for the tree, or null if they are not kept.
+   */
+  private volatile BitTreeStats stats;
 
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
 
   /**
-   * Create a tree with the given depth.
+   * Create a tree with the given depth whose values are strings.
+   * Values loaded from text are stored unchanged, so this constructor
+   * is intended for <code>BitTree&lt;String&gt;</code>.
    *
    * @param n
-   *   The depth of the tree.
+   *   The depth of the tree, between 1 and 64.
+   * @throws IllegalArgumentException
+   *   If the depth is out of range.
    */
+  @SuppressWarnings("unchecked")
   public BitTree(int n) {
+    this(n, (BitTreeCodec<V>) BitTreeCodec.strings());
+  } // BitTree(int)
+
+  /**
+   * Create a tree with the given depth whose values are converted
+   * to and from text with the given codec.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and 64.
+   * @param valueCodec
+   *   Converts values to and from text.
+   * @throws IllegalArgumentException
+   *   If the depth is out of range.
+   */
+  public BitTree(int n, BitTreeCodec<V> valueCodec) {
+    if ((n < 1) || (n > Long.SIZE)) {
+      throw new IllegalArgumentException("Depth must be between 1 and 64");
+    } // end of if loop
     this.depth = n;
     this.root = null;
-  } // BitTree(int)
+    this.size = 0;
+    this.codec = valueCodec;
+    this.valuePool = null;
+    this.interning = true;
+  } // BitTree(int, BitTreeCodec)
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Create a tree of strings with the given depth, choosing the
+   * representation that suits the depth. Shallow trees are stored as
+   * a flat array indexed by key; deeper trees are stored as linked
+   * nodes.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and 64.
+   * @return
+   *   A new, empty tree.
+   */
+  public static BitTree<String> create(int n) {
+    return create(n, BitTreeCodec.strings());
+  } // create(int)
+
+  /**
+   * Create a tree with the given depth and codec, choosing the
+   * representation that suits the depth.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param n
+   *   The depth of the tree, between 1 and 64.
+   * @param valueCodec
+   *   Converts values to and from text.
+   * @return
+   *   A new, empty tree.
+   */
+  public static <V> BitTree<V> create(int n, BitTreeCodec<V> valueCodec) {
+    if (n <= denseThreshold) {
+      return new DenseBitTree<>(n, valueCodec);
+    } // end of if loop
+    return new BitTree<>(n, valueCodec);
+  } // create(int, BitTreeCodec)
+
+  /**
+   * Get the largest depth for which <code>create</code> builds a
+   * dense tree.
+   *
+   * @return
+   *   The current threshold.
+   */
+  public static int getDenseThreshold() {
+    return denseThreshold;
+  } // getDenseThreshold()
+
+  /**
+   * Set the largest depth for which <code>create</code> builds a
+   * dense tree. Use 0 to disable dense trees.
+   *
+   * @param threshold
+   *   The new threshold, at most <code>DenseBitTree.MAX_DEPTH</code>.
+   * @throws IllegalArgumentException
+   *   If the threshold is negative or too large.
+   */
+  public static void setDenseThreshold(int threshold) {
+    if ((threshold < 0) || (threshold > DenseBitTree.MAX_DEPTH)) {
+      throw new IllegalArgumentException("Invalid dense threshold: " + threshold);
+    } // end of if loop
+    denseThreshold = threshold;
+  } // setDenseThreshold(int)
 
   // +---------------+-----------------------------------------------
   // | Local helpers |
   // +---------------+
 
   /**
-   * Validate whether the given bit sequence is valid for this tree.
+   * Validate whether the given bit pattern fits in this tree.
    *
    * @param bits
-   *   The bit sequence to validate.
+   *   The bit pattern to validate.
    * @return
    *   True if valid; false otherwise.
    */
-  private boolean isValidBits(String bits) {
-    return bits.length() == depth;
-  } // isValidBits()
+  boolean isValidBits(long bits) {
+    return (depth == Long.SIZE) || ((bits >>> depth) == 0);
+  } // isValidBits(long)
 
   /**
-   * Create a path in the tree for the given bit sequence, adding
-   * nodes as necessary.
+   * Convert a sequence of '0' and '1' characters to the corresponding
+   * bit pattern, with the first character as the most significant bit.
    *
    * @param bits
-   *   The bit sequence for which to create a path.
+   *   The bit sequence to convert.
    * @return
-   *   The node at the end of the path.
+   *   The bit pattern.
+   * @throws IndexOutOfBoundsException
+   *   If the sequence has the wrong length or contains other characters.
    */
-  private BitTreeNode createPath(String bits) {
-    BitTreeNode current = root;
-    if (root == null) {
-      root = new BitTreeInteriorNode();
-      current = root;
+  long toBits(String bits) {
+    if (bits.length() != depth) {
+      throw new IndexOutOfBoundsException("Invalid bit sequence");
     } // end of if loop
-    char c;
+    return parseBits(bits);
+  } // toBits(String)
+
+  /**
+   * Convert a sequence of at most 64 '0' and '1' characters to the
+   * corresponding bit pattern, with the first character as the most
+   * significant bit.
+   *
+   * @param bits
+   *   The bit sequence to convert.
+   * @return
+   *   The bit pattern.
+   * @throws IndexOutOfBoundsException
+   *   If the sequence is too long or contains other characters.
+   */
+  static long parseBits(String bits) {
+    if (bits.length() > Long.SIZE) {
+      throw new IndexOutOfBoundsException("Invalid bit sequence");
+    } // end of if loop
+    long result = 0;
     for (int i = 0; i < bits.length(); i++) {
-      c = bits.toCharArray()[i];
-      if (c == '0') {
-        if (current.getLeft() == null) {
-          current.setLeft((i == bits.length() - 1) ? new BitTreeLeaf() : new BitTreeInteriorNode());
-        } // end of if loop
-        current = current.getLeft();
-      } else if (c == '1') {
-        if (current.getRight() == null) {
-          current.setRight((i == bits.length() - 1) ? new BitTreeLeaf()
-              : new BitTreeInteriorNode());
-        } // end of if loop
-        current = current.getRight();
+      char c = bits.charAt(i);
+      if (c == '1') {
+        result = (result << 1) | 1;
+      } else if (c == '0') {
+        result <<= 1;
+      } else {
+        throw new IndexOutOfBoundsException("Invalid bit sequence");
+      } // end of if loop
+    } // end of for loop
+    return result;
+  } // parseBits(String)
+
+  /**
+   * Get a mask of the low bits of a long.
+   *
+   * @param n
+   *   The number of bits, between 0 and 64.
+   * @return
+   *   A long whose low <code>n</code> bits are set.
+   */
+  static long lowBits(int n) {
+    return (n == Long.SIZE) ? -1L : (1L << n) - 1;
+  } // lowBits(int)
+
+  /**
+   * Determine whether a subtree may hold keys in a range. The keys in
+   * the subtree share all but their low <code>free</code> bits with
+   * <code>bits</code>. Keys are compared as unsigned numbers.
+   *
+   * @param bits
+   *   Any key in the subtree.
+   * @param free
+   *   The number of low bits that vary within the subtree.
+   * @param lo
+   *   The smallest key in the range.
+   * @param hi
+   *   The largest key in the range.
+   * @return
+   *   True if some key in the subtree is in the range.
+   */
+  static boolean overlaps(long bits, int free, long lo, long hi) {
+    long mask = lowBits(free);
+    return (Long.compareUnsigned(bits | mask, lo) >= 0)
+        && (Long.compareUnsigned(bits & ~mask, hi) <= 0);
+  } // overlaps(long, int, long, long)
+
+  /**
+   * Convert a bit pattern to a sequence of <code>depth</code> '0'
+   * and '1' characters, with the most significant bit first.
+   *
+   * @param bits
+   *   The bit pattern to convert.
+   * @return
+   *   The bit sequence.
+   */
+  String toBitString(long bits) {
+    char[] chars = new char[depth];
+    for (int i = depth - 1; i >= 0; i--) {
+      chars[i] = (char) ('0' + (bits & 1));
+      bits >>>= 1;
+    } // end of for loop
+    return new String(chars);
+  } // toBitString(long)
+
+  /**
+   * Replace the nodes of the tree with ones built elsewhere, as by
+   * <code>BitTreeBuilder</code>.
+   *
+   * @param top
+   *   The new root, whose values are all at the depth of the tree.
+   * @param count
+   *   The number of values below the new root.
+   */
+  void setRoot(Branch top, long count) {
+    this.root = top;
+    this.size = count;
+  } // setRoot(Branch, long)
+
+  /**
+   * Create a path in the tree for the given bit pattern, adding
+   * branches as necessary.
+   *
+   * @param bits
+   *   The bit pattern for which to create a path, in the low
+   *   <code>length</code> bits.
+   * @param length
+   *   The number of bits in the pattern, less than the depth.
+   * @return
+   *   The branch at the end of the path.
+   */
+  private Branch createPath(long bits, int length) {
+    if (root == null) {
+      root = new Branch();
+    } // end of if loop
+    Branch current = root;
+    for (int shift = length - 1; shift >= 0; shift--) {
+      int bit = (int) (bits >>> shift) & 1;
+      Object next = current.children[bit];
+      if (next == null) {
+        next = new Branch();
+        current.children[bit] = next;
       } // end of if loop
+      current = (Branch) next;
     } // end of for loop
     return current;
-  } // end of for loop
+  } // createPath(long, int)
+
+  /**
+   * Unlink the empty branches at the end of a path, working up toward
+   * the root, and drop the root if it is left empty.
+   *
+   * @param path
+   *   The branches on the path, starting with the root.
+   * @param bits
+   *   The bit pattern that leads along the path, in the low
+   *   <code>length</code> bits.
+   * @param length
+   *   The number of bits in the pattern.
+   * @param last
+   *   The index in <code>path</code> of the last branch.
+   */
+  private void prune(Branch[] path, long bits, int length, int last) {
+    for (int level = last; (level > 0) && path[level].isEmpty(); level--) {
+      path[level - 1].children[(int) (bits >>> (length - level)) & 1] = null;
+    } // end of for loop
+    if (root.isEmpty()) {
+      root = null;
+    } // end of if loop
+  } // prune(Branch[], long, int, int)
+
+  /**
+   * Validate a prefix of a key.
+   *
+   * @param bits
+   *   The prefix, in the low <code>length</code> bits.
+   * @param length
+   *   The number of bits in the prefix.
+   * @throws IndexOutOfBoundsException
+   *   If the length is not between 0 and the depth, or the prefix does
+   *   not fit in it.
+   */
+  void checkPrefix(long bits, int length) {
+    if ((length < 0) || (length > depth) || ((bits & ~lowBits(length)) != 0)) {
+      throw new IndexOutOfBoundsException("Invalid bit sequence");
+    } // end of if loop
+  } // checkPrefix(long, int)
 
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
 
+  /**
+   * Get the depth of the tree.
+   *
+   * @return
+   *   The length of the bit sequences stored in this tree.
+   */
+  public int depth() {
+    return depth;
+  } // depth()
+
+  /**
+   * Get a read-only view of the tree's nodes in the form of
+   * <code>BitTreeNode</code> objects, for code written against that
+   * interface. The view is built as it is walked and reflects later
+   * changes to the tree. Subclasses that store mappings elsewhere show
+   * only their prefix values in it.
+   *
+   * @return
+   *   The root of the view, or null if the tree has no nodes.
+   */
+  public BitTreeNode<V> root() {
+    return (root == null) ? null : new BitTreeNodeView<>(root, -1, depth);
+  } // root()
+
+  /**
+   * Get the codec used to convert values to and from text.
+   *
+   * @return
+   *   The codec.
+   */
+  public BitTreeCodec<V> codec() {
+    return codec;
+  } // codec()
+
+  /**
+   * Get the pool of values loaded into the tree, whose counts show how
+   * many loaded values were shared rather than created.
+   *
+   * @return
+   *   The pool, or null if interning is turned off or nothing has been
+   *   loaded since the tree was created or cleared.
+   */
+  public BitTreeValuePool<V> valuePool() {
+    return valuePool;
+  } // valuePool()
+
+  /**
+   * Get the pool into which to intern loaded values, creating it on
+   * the first load so that trees that are never loaded, such as the
+   * versions made by <code>FrozenBitTree.withSet</code>, carry none.
+   *
+   * @return
+   *   The pool, or null if interning is turned off.
+   */
+  BitTreeValuePool<V> loadPool() {
+    BitTreeValuePool<V> pool = valuePool;
+    if ((pool == null) && interning) {
+      synchronized (this) {
+        pool = valuePool;
+        if (pool == null) {
+          pool = new BitTreeValuePool<>(codec);
+          valuePool = pool;
+        } // end of if loop
+      } // end of synchronized
+    } // end of if loop
+    return pool;
+  } // loadPool()
+
+  /**
+   * Turn interning of loaded values on or off. Interning is on by
+   * default: each distinct value is decoded once, and every mapping
+   * that loads it shares the one instance. Trees whose values are
+   * nearly all distinct may turn it off.
+   *
+   * <p>The pool only grows. It keeps the text and value of every
+   * distinct value loaded until the tree is cleared, even after the
+   * mappings that held a value are overwritten or removed, so the
+   * memory of a tree that interns does not shrink with its live keys.
+   * Trees whose mappings churn should turn interning off, or be
+   * cleared and reloaded now and then.</p>
+   *
+   * @param on
+   *   True to intern values in later loads; false to decode each one
+   *   separately and release the pool.
+   */
+  public void setInterning(boolean on) {
+    interning = on;
+    if (!on) {
+      valuePool = null;
+    } // end of if loop
+  } // setInterning(boolean)
+
+  /**
+   * Get the statistics for the tree: its shape, the outcome of its
+   * lookups, and the time spent loading it.
+   *
+   * @return
+   *   The statistics, or null if they are not kept.
+   */
+  public BitTreeStats stats() {
+    return stats;
+  } // stats()
+
+  /**
+   * Turn statistics on or off. Statistics are off by default. While
+   * they are on, <code>get</code>, <code>getOrDefault</code>, and
+   * <code>contains</code> count hits and misses, as do the primitive
+   * lookups of <code>IntBitTree</code> and <code>CharBitTree</code>,
+   * and loads are timed;
+   * <code>getOrNull</code> is left uncounted so that variants and
+   * bulk operations built on it pay nothing.
+   *
+   * @param on
+   *   True to keep statistics, starting from zero if they were off;
+   *   false to stop keeping them.
+   */
+  public void setStatistics(boolean on) {
+    if (!on) {
+      stats = null;
+    } else if (stats == null) {
+      stats = new BitTreeStats(() -> List.of(this));
+    } // end of if loop
+  } // setStatistics(boolean)
+
+  /**
+   * Count the nodes in the tree: the interior nodes on the paths to
+   * values and to prefix values, and one leaf for each mapping. Every
+   * variant counts the same way, whatever its layout, so counts may be
+   * compared across trees; a leaf is counted even where the value is
+   * stored in its parent's slot or in an array.
+   *
+   * @return
+   *   The number of interior nodes and leaves.
+   */
+  public long nodeCount() {
+    return countBranches(root, 0) + size();
+  } // nodeCount()
+
+  /**
+   * Estimate the memory used by the structure of the tree, not
+   * counting the values themselves, which may be shared.
+   *
+   * @return
+   *   The estimate, in bytes.
+   */
+  public long memoryEstimate() {
+    return countBranches(root, 0) * BRANCH_BYTES;
+  } // memoryEstimate()
+
+  /**
+   * Count the branches below and including one branch.
+   *
+   * @param branch
+   *   The branch, or null.
+   * @param level
+   *   The number of bits on the path to the branch.
+   * @return
+   *   The number of branches.
+   */
+  private long countBranches(Branch branch, int level) {
+    if (branch == null) {
+      return 0;
+    } else if (level == depth - 1) {
+      return 1;
+    } // end of if loop
+    return 1 + countBranches((Branch) branch.children[0], level + 1)
+        + countBranches((Branch) branch.children[1], level + 1);
+  } // countBranches(Branch, int)
+
+  /**
+   * Look up a bit pattern, counting the outcome if statistics are on.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value, or null if the pattern has none.
+   */
+  private V lookup(long bits) {
+    V value = getOrNull(bits);
+    counted(value != null);
+    return value;
+  } // lookup(long)
+
+  /**
+   * Count the outcome of a lookup, if statistics are on. Subclasses
+   * whose lookups do not go through <code>getOrNull</code> call this
+   * so that they are counted like any other tree's.
+   *
+   * @param found
+   *   True if the lookup found a value; false otherwise.
+   * @return
+   *   <code>found</code>.
+   */
+  final boolean counted(boolean found) {
+    BitTreeStats counters = stats;
+    if (counters != null) {
+      counters.lookup(found);
+    } // end of if loop
+    return found;
+  } // counted(boolean)
+
   /**
    * Add a mapping from a bit sequence to a value.
    *
@@ -106,13 +624,116 @@ public class BitTree {
    * @throws IndexOutOfBoundsException
    *   If the bit sequence is invalid or inappropriate.
    */
-  public void set(String bits, String value) {
+  public void set(String bits, V value) {
+    set(toBits(bits), value);
+  } // set(String, V)
+
+  /**
+   * Add a mapping from a bit pattern to a value. The low-order
+   * <code>depth</code> bits of the pattern form the key, with the
+   * most significant of those bits nearest the root.
+   *
+   * @param bits
+   *   The bit pattern (must fit in the depth of the tree).
+   * @param value
+   *   The value to store at the bit pattern, or null to remove the
+   *   mapping, as by <code>remove</code>.
+   * @throws IndexOutOfBoundsException
+   *   If the bit pattern has bits set above the depth of the tree.
+   */
+  public void set(long bits, V value) {
     if (!isValidBits(bits)) {
       throw new IndexOutOfBoundsException("Invalid bit sequence");
     } // end of if loop
-    BitTreeNode node = createPath(bits);
-    node.setValue(value);
-  } // set(String, String)
+    if (value == null) {
+      remove(bits);
+      return;
+    } // end of if loop
+    Branch parent = createPath(bits >>> 1, depth - 1);
+    int bit = (int) bits & 1;
+    if (parent.children[bit] == null) {
+      size++;
+    } // end of if loop
+    parent.children[bit] = value;
+  } // set(long, V)
+
+  /**
+   * Remove the mapping for a bit pattern, unlinking every branch left
+   * without children, so that the memory they used can be reclaimed.
+   * Branches that hold prefix values are kept. Never throws for a
+   * missing or invalid pattern.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value that was removed, or null if there was none.
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(long bits) {
+    if (!isValidBits(bits)) {
+      return null;
+    } // end of if loop
+    Branch[] path = new Branch[depth];
+    path[0] = root;
+    for (int level = 1; (level < depth) && (path[level - 1] != null); level++) {
+      path[level] = (Branch) path[level - 1].children[(int) (bits >>> (depth - level)) & 1];
+    } // end of for loop
+    Branch parent = path[depth - 1];
+    if ((parent == null) || (parent.children[(int) bits & 1] == null)) {
+      return null;
+    } // end of if loop
+    V removed = (V) parent.children[(int) bits & 1];
+    parent.children[(int) bits & 1] = null;
+    size--;
+    prune(path, bits, depth, depth - 1);
+    return removed;
+  } // remove(long)
+
+  /**
+   * Remove the mapping for a bit sequence.
+   *
+   * @param bits
+   *   The bit sequence (must be of appropriate length).
+   * @return
+   *   The value that was removed, or null if there was none.
+   * @throws IndexOutOfBoundsException
+   *   If the bit sequence is invalid.
+   */
+  public V remove(String bits) {
+    return remove(toBits(bits));
+  } // remove(String)
+
+  /**
+   * Remove every mapping and prefix value from the tree, along with
+   * the pool of loaded values.
+   */
+  public void clear() {
+    root = null;
+    size = 0;
+    valuePool = null;
+  } // clear()
+
+  /**
+   * Get the number of mappings in the tree. The count is kept as
+   * mappings are added and removed, so this takes constant time.
+   * Prefix values shorter than the depth are not counted.
+   *
+   * @return
+   *   The number of keys with values.
+   */
+  public long size() {
+    return size;
+  } // size()
+
+  /**
+   * Determine whether the tree has no mappings.
+   *
+   * @return
+   *   True if <code>size()</code> is zero; false otherwise.
+   */
+  public boolean isEmpty() {
+    return size() == 0;
+  } // isEmpty()
 
   /**
    * Retrieve the value associated with a bit sequence.
@@ -124,22 +745,223 @@ public class BitTree {
    * @throws IndexOutOfBoundsException
    *   If the bit sequence is invalid or not found.
    */
-  public String get(String bits) {
+  public V get(String bits) {
+    return get(toBits(bits));
+  } // get(String)
+
+  /**
+   * Retrieve the value associated with a bit pattern.
+   *
+   * @param bits
+   *   The bit pattern (must fit in the depth of the tree).
+   * @return
+   *   The value associated with the bit pattern.
+   * @throws IndexOutOfBoundsException
+   *   If the bit pattern is invalid or not found.
+   */
+  public V get(long bits) {
+    V value = lookup(bits);
+    if (value == null) {
+      throw new IndexOutOfBoundsException(isValidBits(bits) ? "No value found at path"
+          : "Invalid bit sequence");
+    } // end of if loop
+    return value;
+  } // get(long)
+
+  /**
+   * Retrieve the value associated with a bit pattern, or null if there
+   * is none. Unlike <code>get</code>, this never throws, so it suits
+   * lookups that often miss. Subclasses that store mappings elsewhere
+   * override this method; <code>get</code> and the other lookups are
+   * built on it.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value, or null if the pattern has no value or does not fit
+   *   in the depth of the tree.
+   */
+  @SuppressWarnings("unchecked")
+  public V getOrNull(long bits) {
     if (!isValidBits(bits)) {
-      throw new IndexOutOfBoundsException("Invalid bit sequence");
+      return null;
     } // end of if loop
-    BitTreeNode current = root;
-    for (char c : bits.toCharArray()) {
-      if (current == null) {
-        throw new IndexOutOfBoundsException("Path does not exist");
-      } // end of if loop
-      current = (c == '0') ? current.getLeft() : current.getRight();
+    Object current = root;
+    for (int shift = depth - 1; (shift >= 0) && (current != null); shift--) {
+      current = ((Branch) current).children[(int) (bits >>> shift) & 1];
     } // end of for loop
-    if (current == null || current.getValue() == null) {
-      throw new IndexOutOfBoundsException("No value found at path");
+    return (V) current;
+  } // getOrNull(long)
+
+  /**
+   * Retrieve the value associated with a bit sequence, or null if
+   * there is none.
+   *
+   * @param bits
+   *   The bit sequence (must be of appropriate length).
+   * @return
+   *   The value, or null if the sequence has no value.
+   * @throws IndexOutOfBoundsException
+   *   If the bit sequence is invalid.
+   */
+  public V getOrNull(String bits) {
+    return getOrNull(toBits(bits));
+  } // getOrNull(String)
+
+  /**
+   * Retrieve the value associated with a bit pattern, or a default if
+   * there is none. Never throws.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @param defaultValue
+   *   The value to return if the pattern has no value.
+   * @return
+   *   The value, or <code>defaultValue</code>.
+   */
+  public V getOrDefault(long bits, V defaultValue) {
+    V value = lookup(bits);
+    return (value == null) ? defaultValue : value;
+  } // getOrDefault(long, V)
+
+  /**
+   * Determine whether a bit pattern has a value. Never throws.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   True if the pattern has a value; false otherwise.
+   */
+  public boolean contains(long bits) {
+    return lookup(bits) != null;
+  } // contains(long)
+
+  /**
+   * Determine whether a bit sequence has a value.
+   *
+   * @param bits
+   *   The bit sequence (must be of appropriate length).
+   * @return
+   *   True if the sequence has a value; false otherwise.
+   * @throws IndexOutOfBoundsException
+   *   If the bit sequence is invalid.
+   */
+  public boolean contains(String bits) {
+    return contains(toBits(bits));
+  } // contains(String)
+
+  /**
+   * Associate a value with every key that starts with a prefix, for
+   * use with <code>longestPrefixMatch</code>. A prefix of the full
+   * depth is an ordinary mapping; shorter prefixes are kept apart from
+   * the mappings, so they are not seen by <code>get</code>,
+   * enumeration, or <code>dump</code>, but <code>freeze</code> and
+   * <code>compact</code> carry them into the frozen copy.
+   *
+   * @param bits
+   *   The prefix, in the low <code>length</code> bits.
+   * @param length
+   *   The number of bits in the prefix, between 0 and the depth.
+   * @param value
+   *   The value for the prefix, or null to clear it. Clearing a prefix
+   *   adds no branches, and unlinks those it leaves empty, as
+   *   <code>remove</code> does.
+   * @throws IndexOutOfBoundsException
+   *   If the length is out of range or the prefix does not fit in it.
+   */
+  public void setPrefix(long bits, int length, V value) {
+    checkPrefix(bits, length);
+    if (length == depth) {
+      set(bits, value);
+    } else if (value != null) {
+      createPath(bits, length).value = value;
+    } else {
+      Branch[] path = new Branch[length + 1];
+      path[0] = root;
+      for (int level = 1; (level <= length) && (path[level - 1] != null); level++) {
+        path[level] = (Branch) path[level - 1].children[(int) (bits >>> (length - level)) & 1];
+      } // end of for loop
+      if (path[length] != null) {
+        path[length].value = null;
+        prune(path, bits, length, length);
+      } // end of if loop
     } // end of if loop
-    return current.getValue();
-  } // get(String)
+  } // setPrefix(long, int, V)
+
+  /**
+   * Associate a value with every key that starts with a prefix.
+   *
+   * @param bits
+   *   The prefix, as at most <code>depth</code> '0' and '1' characters.
+   * @param value
+   *   The value for the prefix, or null to clear it.
+   * @throws IndexOutOfBoundsException
+   *   If the prefix is too long or contains other characters.
+   */
+  public void setPrefix(String bits, V value) {
+    setPrefix(parseBits(bits), bits.length(), value);
+  } // setPrefix(String, V)
+
+  /**
+   * Find the value for the longest prefix of a key that has one, in a
+   * single descent.
+   *
+   * @param key
+   *   The key, in the low <code>length</code> bits.
+   * @param length
+   *   The number of bits in the key, between 0 and the depth.
+   * @return
+   *   The value for the longest prefix of the key (including the whole
+   *   key) that has a value, or null if none does.
+   * @throws IndexOutOfBoundsException
+   *   If the length is out of range or the key does not fit in it.
+   */
+  @SuppressWarnings("unchecked")
+  public V longestPrefixMatch(long key, int length) {
+    checkPrefix(key, length);
+    V best = null;
+    Object current = root;
+    int level = 0;
+    while (current != null) {
+      if (level == depth) {
+        best = (V) current;
+        break;
+      } // end of if loop
+      Branch branch = (Branch) current;
+      if (branch.value != null) {
+        best = (V) branch.value;
+      } // end of if loop
+      if (level == length) {
+        break;
+      } // end of if loop
+      current = branch.children[(int) (key >>> (length - 1 - level)) & 1];
+      level++;
+    } // end of while loop
+    if ((length == depth) && (current == null)) {
+      // The mapping for the whole key may be stored elsewhere by a
+      // subclass.
+      V full = getOrNull(key);
+      if (full != null) {
+        best = full;
+      } // end of if loop
+    } // end of if loop
+    return best;
+  } // longestPrefixMatch(long, int)
+
+  /**
+   * Find the value for the longest prefix of a key that has one.
+   *
+   * @param key
+   *   The key, as at most <code>depth</code> '0' and '1' characters.
+   * @return
+   *   The value for the longest prefix that has one, or null if none
+   *   does.
+   * @throws IndexOutOfBoundsException
+   *   If the key is too long or contains other characters.
+   */
+  public V longestPrefixMatch(String key) {
+    return longestPrefixMatch(parseBits(key), key.length());
+  } // longestPrefixMatch(String)
 
   /**
    * Print out the contents of the tree in CSV format.
@@ -148,45 +970,428 @@ public class BitTree {
    *   The writer to which the tree is printed.
    */
   public void dump(PrintWriter pen) {
-    dumpHelper(pen, root, "");
+    forEach((value, bits) -> pen.println(toBitString(bits) + "," + codec.encode(value)));
   } // dump(PrintWriter)
 
   /**
-   * Recursively print the contents of the tree in CSV format.
+   * Create an immutable copy of the tree. Later changes to this tree do
+   * not affect the copy, which may be shared freely between threads and
+   * updated with <code>withSet</code>. Prefix values set with
+   * <code>setPrefix</code> are copied too, so
+   * <code>longestPrefixMatch</code> gives the same answers on the copy.
    *
-   * @param pen
-   *   The writer to which the tree is printed.
+   * @return
+   *   A frozen tree with the same depth, codec, mappings, and prefix
+   *   values.
+   */
+  public FrozenBitTree<V> freeze() {
+    return FrozenBitTree.of(this);
+  } // freeze()
+
+  /**
+   * Create an immutable copy of the tree in which identical subtrees
+   * are shared, as by <code>FrozenBitTree.compact</code>. Only frozen
+   * trees can share subtrees, since changing a shared node in place
+   * would change every key that leads to it.
+   *
+   * @return
+   *   A compacted frozen tree with the same mappings and prefix
+   *   values.
+   */
+  public FrozenBitTree<V> compact() {
+    return freeze().compact();
+  } // compact()
+
+  /**
+   * Apply an action to every mapping in the tree, in key order.
+   *
+   * @param action
+   *   The action, which receives each value and its key.
+   */
+  public void forEach(ObjLongConsumer<? super V> action) {
+    scan((value, bits) -> {
+      action.accept(value, bits);
+      return true;
+    }, 0, lowBits(depth));
+  } // forEach(ObjLongConsumer)
+
+  /**
+   * Get an iterator over the mappings in the tree, in key order. The
+   * iterator does not support removal.
+   *
+   * @return
+   *   An iterator over entries from keys to values.
+   */
+  @Override
+  public Iterator<Map.Entry<Long, V>> iterator() {
+    return Spliterators.iterator(spliterator());
+  } // iterator()
+
+  /**
+   * Get a spliterator over the mappings in the tree, in key order. The
+   * spliterator splits at subtree boundaries, halving the range of keys
+   * it covers each time, so parallel streams divide the tree between
+   * threads without copying it.
+   *
+   * @return
+   *   A spliterator over entries from keys to values.
+   */
+  @Override
+  public Spliterator<Map.Entry<Long, V>> spliterator() {
+    return new BitTreeSpliterator<>(this, 0, lowBits(depth));
+  } // spliterator()
+
+  /**
+   * Get a stream of the mappings in the tree, in key order.
+   *
+   * @return
+   *   A sequential stream of entries from keys to values.
+   */
+  public Stream<Map.Entry<Long, V>> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  } // stream()
+
+  /**
+   * Get a stream of the mappings whose keys fall in a range, in key
+   * order. Only the subtrees that overlap the range are visited.
+   *
+   * @param from
+   *   The smallest key in the range (must fit in the depth of the tree).
+   * @param to
+   *   The largest key in the range (must fit in the depth of the tree).
+   * @return
+   *   A sequential stream of entries, which is empty if
+   *   <code>from</code> is greater than <code>to</code>.
+   * @throws IndexOutOfBoundsException
+   *   If either key has bits set above the depth of the tree.
+   */
+  public Stream<Map.Entry<Long, V>> range(long from, long to) {
+    if (!isValidBits(from) || !isValidBits(to)) {
+      throw new IndexOutOfBoundsException("Invalid bit sequence");
+    } // end of if loop
+    if (Long.compareUnsigned(from, to) > 0) {
+      return Stream.empty();
+    } // end of if loop
+    return StreamSupport.stream(new BitTreeSpliterator<>(this, from, to), false);
+  } // range(long, long)
+
+  /**
+   * Get a stream of the mappings whose keys fall in a range, in key
+   * order.
+   *
+   * @param from
+   *   The smallest key in the range (must be of appropriate length).
+   * @param to
+   *   The largest key in the range (must be of appropriate length).
+   * @return
+   *   A sequential stream of entries.
+   * @throws IndexOutOfBoundsException
+   *   If either bit sequence is invalid.
+   */
+  public Stream<Map.Entry<Long, V>> range(String from, String to) {
+    return range(toBits(from), toBits(to));
+  } // range(String, String)
+
+  /**
+   * Get a stream of the mappings whose keys start with a prefix, in
+   * key order. Only the subtree below the prefix is visited.
+   *
+   * @param bits
+   *   The prefix, in the low <code>length</code> bits.
+   * @param length
+   *   The number of bits in the prefix, between 0 and the depth.
+   * @return
+   *   A sequential stream of entries.
+   * @throws IndexOutOfBoundsException
+   *   If the length is out of range or the prefix does not fit in it.
+   */
+  public Stream<Map.Entry<Long, V>> prefix(long bits, int length) {
+    checkPrefix(bits, length);
+    int free = depth - length;
+    long from = (free == Long.SIZE) ? 0 : bits << free;
+    return range(from, from | lowBits(free));
+  } // prefix(long, int)
+
+  /**
+   * Get a stream of the mappings whose keys start with a prefix, in
+   * key order.
+   *
+   * @param bits
+   *   The prefix, as at most <code>depth</code> '0' and '1' characters.
+   * @return
+   *   A sequential stream of entries.
+   * @throws IndexOutOfBoundsException
+   *   If the prefix is too long or contains other characters.
+   */
+  public Stream<Map.Entry<Long, V>> prefix(String bits) {
+    return prefix(parseBits(bits), bits.length());
+  } // prefix(String)
+
+  /**
+   * Visit the mappings whose keys fall in a range, in key order,
+   * descending only into subtrees that overlap the range. Subclasses
+   * that store mappings elsewhere override this method; enumeration,
+   * <code>dump</code>, and streams are all built on it.
+   *
+   * @param visitor
+   *   The visitor, which may stop the scan by returning false.
+   * @param lo
+   *   The smallest key in the range, compared as unsigned.
+   * @param hi
+   *   The largest key in the range, compared as unsigned.
+   * @return
+   *   False if the visitor stopped the scan; true otherwise.
+   */
+  boolean scan(Visitor<? super V> visitor, long lo, long hi) {
+    return scanHelper(visitor, root, 0, 0, lo, hi);
+  } // scan(Visitor, long, long)
+
+  /**
+   * Recursively visit the mappings in a range below a node.
+   *
+   * @param visitor
+   *   The visitor.
    * @param node
-   *   The current node being processed.
+   *   The current branch, or the value if the path is complete.
    * @param prefix
-   *   The path to the current node.
+   *   The bits on the path to the current node.
+   * @param level
+   *   The number of bits on the path to the current node.
+   * @param lo
+   *   The smallest key in the range.
+   * @param hi
+   *   The largest key in the range.
+   * @return
+   *   False if the visitor stopped the scan; true otherwise.
    */
-  private void dumpHelper(PrintWriter pen, BitTreeNode node, String prefix) {
-    if (node == null) {
+  @SuppressWarnings("unchecked")
+  private boolean scanHelper(Visitor<? super V> visitor, Object node, long prefix,
+      int level, long lo, long hi) {
+    if ((node == null) || !overlaps(prefix << (depth - level), depth - level, lo, hi)) {
+      return true;
+    } // end of if loop
+    if (level == depth) {
+      return visitor.visit((V) node, prefix);
+    } // end of if loop
+    Object[] children = ((Branch) node).children;
+    return (scanHelper(visitor, children[0], prefix << 1, level + 1, lo, hi)
+        && scanHelper(visitor, children[1], (prefix << 1) | 1, level + 1, lo, hi));
+  } // scanHelper(Visitor, Object, long, int, long, long)
+
+  /**
+   * Visit the values of the prefixes shorter than the depth, as set by
+   * <code>setPrefix</code>, in preorder. Subclasses that store prefix
+   * values elsewhere override this method; <code>freeze</code> is built
+   * on it.
+   *
+   * @param visitor
+   *   The visitor.
+   */
+  void scanPrefixes(PrefixVisitor<? super V> visitor) {
+    prefixHelper(visitor, root, 0, 0);
+  } // scanPrefixes(PrefixVisitor)
+
+  /**
+   * Recursively visit the prefix values at and below a branch.
+   *
+   * @param visitor
+   *   The visitor.
+   * @param branch
+   *   The current branch, or null.
+   * @param prefix
+   *   The bits on the path to the branch.
+   * @param level
+   *   The number of bits on the path to the branch.
+   */
+  @SuppressWarnings("unchecked")
+  private void prefixHelper(PrefixVisitor<? super V> visitor, Branch branch, long prefix,
+      int level) {
+    if (branch == null) {
       return;
     } // end of if loop
-    if (node.getValue() != null) {
-      pen.println(prefix + "," + node.getValue());
+    if (branch.value != null) {
+      visitor.visit((V) branch.value, prefix, level);
+    } // end of if loop
+    if (level < depth - 1) {
+      prefixHelper(visitor, (Branch) branch.children[0], prefix << 1, level + 1);
+      prefixHelper(visitor, (Branch) branch.children[1], (prefix << 1) | 1, level + 1);
     } // end of if loop
-    dumpHelper(pen, node.getLeft(), prefix + "0");
-    dumpHelper(pen, node.getRight(), prefix + "1");
-  } // dumpHelper(Printwrite, BitTreeNode, String)
+  } // prefixHelper(PrefixVisitor, Branch, long, int)
 
   /**
-   * Load mappings from an input stream into the tree.
+   * Load mappings from an input stream into the tree. Each line holds
+   * a bit sequence, a comma, and a value, which is decoded as UTF-8
+   * text with the tree's codec. Unless interning is turned off, values
+   * already in the tree's value pool are shared rather than decoded
+   * again. Blank lines are ignored. The stream is not closed.
    *
    * @param source
    *   The input stream containing mappings in CSV format.
+   * @throws IllegalArgumentException
+   *   If a line is malformed; the message gives the line number.
+   * @throws UncheckedIOException
+   *   If reading the stream fails.
    */
   public void load(InputStream source) {
-    Scanner scanner = new Scanner(source);
-    while (scanner.hasNextLine()) {
-      String[] parts = scanner.nextLine().split(",", 2);
-      if (parts.length == 2) {
-        set(parts[0], parts[1]);
-      } // end of if loop
-    } // end of while loop
-    scanner.close();
+    long start = System.nanoTime();
+    MappingParser parser = new MappingParser(depth, this::loadMapping);
+    byte[] buffer = new byte[LOAD_BUFFER_SIZE];
+    try {
+      int count;
+      while ((count = source.read(buffer)) != -1) {
+        parser.parse(buffer, 0, count);
+      } // end of while loop
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // end of try/catch
+    parser.finish();
+    loaded(start);
   } // load(InputStream)
 
+  /**
+   * Load mappings from a file into the tree, reading the file through
+   * memory mappings rather than stream reads.
+   *
+   * @param file
+   *   The file containing mappings in CSV format.
+   * @throws IOException
+   *   If the file cannot be read.
+   * @throws IllegalArgumentException
+   *   If a line is malformed; the message gives the line number.
+   */
+  public void load(Path file) throws IOException {
+    long start = System.nanoTime();
+    MappingParser parser = new MappingParser(depth, this::loadMapping);
+    byte[] buffer = new byte[LOAD_BUFFER_SIZE];
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      for (long position = 0; position < size; position += MAP_CHUNK_SIZE) {
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, position,
+            Math.min(MAP_CHUNK_SIZE, size - position));
+        while (map.hasRemaining()) {
+          int count = Math.min(buffer.length, map.remaining());
+          map.get(buffer, 0, count);
+          parser.parse(buffer, 0, count);
+        } // end of while loop
+      } // end of for loop
+    } // end of try
+    parser.finish();
+    loaded(start);
+  } // load(Path)
+
+  /**
+   * Record the time a load took, if statistics are on.
+   *
+   * @param start
+   *   The value of <code>System.nanoTime</code> when the load began.
+   */
+  private void loaded(long start) {
+    BitTreeStats counters = stats;
+    if (counters != null) {
+      counters.loaded(System.nanoTime() - start);
+    } // end of if loop
+  } // loaded(long)
+
+  /**
+   * Decode and store one mapping read by <code>load</code>.
+   *
+   * @param bits
+   *   The key.
+   * @param value
+   *   The array holding the UTF-8 bytes of the value.
+   * @param off
+   *   The index of the first byte of the value.
+   * @param len
+   *   The number of bytes in the value.
+   * @param line
+   *   The line on which the mapping appears.
+   * @throws IllegalArgumentException
+   *   If the value cannot be decoded.
+   */
+  void loadMapping(long bits, byte[] value, int off, int len, int line) {
+    BitTreeValuePool<V> pool = loadPool();
+    V decoded;
+    try {
+      decoded = (pool != null) ? pool.intern(value, off, len)
+          : codec.decode(new String(value, off, len, StandardCharsets.UTF_8));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Malformed mapping on line " + line + ": "
+          + e.getMessage(), e);
+    } // end of try/catch
+    set(bits, decoded);
+  } // loadMapping(long, byte[], int, int, int)
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * The nodes of a linked tree above the last level. Every branch has
+   * the same layout, so walking the tree never dispatches through an
+   * interface: each step indexes <code>children</code> with the next
+   * bit of the key. There are no leaf objects; at the last level, the
+   * slot that would hold a leaf holds the value itself.
+   */
+  static final class Branch {
+    /**
+     * The children for bits 0 and 1. Each is a branch or, in the
+     * branches one level above the leaves, a value.
+     */
+    final Object[] children = new Object[2];
+
+    /**
+     * The value for the prefix that leads to this branch, if any.
+     */
+    Object value;
+
+    /**
+     * Determine whether the branch may be unlinked from its parent.
+     *
+     * @return
+     *   True if the branch has no value and no children.
+     */
+    boolean isEmpty() {
+      return (value == null) && (children[0] == null) && (children[1] == null);
+    } // isEmpty()
+  } // class Branch
+
+  /**
+   * Receives mappings during a scan.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   */
+  interface Visitor<V> {
+    /**
+     * Visit one mapping.
+     *
+     * @param value
+     *   The value.
+     * @param bits
+     *   The key.
+     * @return
+     *   True to continue the scan; false to stop it.
+     */
+    boolean visit(V value, long bits);
+  } // interface Visitor
+
+  /**
+   * Receives prefix values.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   */
+  interface PrefixVisitor<V> {
+    /**
+     * Visit the value of one prefix.
+     *
+     * @param value
+     *   The value.
+     * @param bits
+     *   The prefix, in the low <code>length</code> bits.
+     * @param length
+     *   The number of bits in the prefix, less than the depth.
+     */
+    void visit(V value, long bits, int length);
+  } // interface PrefixVisitor
 } // class BitTree
@@ -0,0 +1,471 @@
+package edu.grinnell.csc207.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Builds bit trees from large mapping files on several threads at once.
+ * The file is cut into chunks at line boundaries, and each chunk is
+ * parsed and decoded on its own thread, which sorts its mappings into
+ * buckets by their leading bits. Each bucket then becomes a disjoint
+ * subtree, again one per thread, and the subtrees are hung from a
+ * shared spine of interior nodes. When a key appears more than once,
+ * the last mapping in the file wins, just as with <code>load</code>.
+ * Each chunk interns its values in its own pool, and the pools are
+ * merged into the tree's before the subtrees are built, so every leaf
+ * that holds a value shares the tree's one instance of it.
+ *
+ * @author Slok Rajbhandari
+ */
+public class BitTreeBuilder {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The largest number of leading bits used to split mappings into
+   * subtrees.
+   */
+  static final int SPLIT_BITS = 8;
+
+  /**
+   * The smallest chunk of the file given to one thread.
+   */
+  static final long MIN_CHUNK_SIZE = 1 << 20;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Prevent instantiation of this utility class.
+   */
+  private BitTreeBuilder() {
+  } // BitTreeBuilder()
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Build a tree from a mapping file on the common fork/join pool.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param file
+   *   The file containing mappings in CSV format.
+   * @param n
+   *   The depth of the tree, between 1 and 64.
+   * @param codec
+   *   Decodes the values in the file. Must be safe to use from several
+   *   threads at once.
+   * @return
+   *   A new linked tree holding the mappings.
+   * @throws IOException
+   *   If the file cannot be read.
+   * @throws IllegalArgumentException
+   *   If a line is malformed; the message gives the line number.
+   */
+  public static <V> BitTree<V> load(Path file, int n, BitTreeCodec<V> codec)
+      throws IOException {
+    return load(file, n, codec, ForkJoinPool.commonPool());
+  } // load(Path, int, BitTreeCodec)
+
+  /**
+   * Build a tree from a mapping file on the given pool.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param file
+   *   The file containing mappings in CSV format.
+   * @param n
+   *   The depth of the tree, between 1 and 64.
+   * @param codec
+   *   Decodes the values in the file. Must be safe to use from several
+   *   threads at once.
+   * @param pool
+   *   The pool on which to parse the file and build subtrees.
+   * @return
+   *   A new linked tree holding the mappings.
+   * @throws IOException
+   *   If the file cannot be read.
+   * @throws IllegalArgumentException
+   *   If a line is malformed; the message gives the line number.
+   */
+  public static <V> BitTree<V> load(Path file, int n, BitTreeCodec<V> codec,
+      ForkJoinPool pool) throws IOException {
+    BitTree<V> tree = new BitTree<>(n, codec);
+    int split = Math.min(n, SPLIT_BITS);
+    int buckets = 1 << split;
+
+    List<Buckets<V>> chunks;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long[] bounds = chunkBounds(channel, pool.getParallelism());
+      List<Callable<Buckets<V>>> parsers = new ArrayList<>();
+      for (int i = 0; i + 1 < bounds.length; i++) {
+        long start = bounds[i];
+        long end = bounds[i + 1];
+        parsers.add(() -> parse(tree, channel, start, end, split));
+      } // end of for loop
+      chunks = run(pool, parsers);
+    } // end of try
+    // Chunks number their lines from 1, so the first malformed line is
+    // found by adding up the lines in the chunks before it.
+    long before = 0;
+    for (Buckets<V> chunk : chunks) {
+      if (chunk.problem != null) {
+        throw new IllegalArgumentException(
+            MappingParser.message(before + chunk.lines, chunk.problem));
+      } // end of if loop
+      before += chunk.lines;
+    } // end of for loop
+    for (Buckets<V> chunk : chunks) {
+      chunk.values = tree.loadPool().merge(chunk.pool);
+    } // end of for loop
+
+    long[] counts = new long[buckets];
+    List<Callable<Object>> builders = new ArrayList<>();
+    for (int b = 0; b < buckets; b++) {
+      int bucket = b;
+      builders.add(() -> subtree(chunks, bucket, n - split, counts));
+    } // end of for loop
+    List<Object> subtrees = run(pool, builders);
+
+    BitTree.Branch root = new BitTree.Branch();
+    for (int b = 0; b < buckets; b++) {
+      if (subtrees.get(b) != null) {
+        attach(root, b, split, subtrees.get(b));
+      } // end of if loop
+    } // end of for loop
+    long size = 0;
+    for (long count : counts) {
+      size += count;
+    } // end of for loop
+    tree.setRoot(root, size);
+    return tree;
+  } // load(Path, int, BitTreeCodec, ForkJoinPool)
+
+  // +---------------+-----------------------------------------------
+  // | Local helpers |
+  // +---------------+
+
+  /**
+   * Run tasks on a pool and collect their results in order, rethrowing
+   * the first failure.
+   *
+   * @param <T>
+   *   The type of the results.
+   * @param pool
+   *   The pool.
+   * @param tasks
+   *   The tasks.
+   * @return
+   *   The results, in the same order as the tasks.
+   * @throws IOException
+   *   If a task failed to read the file.
+   */
+  private static <T> List<T> run(ForkJoinPool pool, List<Callable<T>> tasks)
+      throws IOException {
+    List<T> results = new ArrayList<>(tasks.size());
+    try {
+      for (Future<T> future : pool.invokeAll(tasks)) {
+        results.add(future.get());
+      } // end of for loop
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while building tree", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) cause).getCause();
+      } else if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } // end of if loop
+      throw new IllegalStateException(cause);
+    } // end of try/catch
+    return results;
+  } // run(ForkJoinPool, List)
+
+  /**
+   * Cut a file into chunks that each end just after a newline (or at
+   * the end of the file).
+   *
+   * @param channel
+   *   The file.
+   * @param threads
+   *   The number of threads that will parse the chunks.
+   * @return
+   *   The offsets at which the chunks start, followed by the size of
+   *   the file.
+   * @throws IOException
+   *   If the file cannot be read.
+   */
+  private static long[] chunkBounds(FileChannel channel, int threads) throws IOException {
+    long size = channel.size();
+    long target = Math.max(MIN_CHUNK_SIZE,
+        Math.min(BitTree.MAP_CHUNK_SIZE, size / (4L * threads)));
+    long[] bounds = new long[(int) (size / target) + 2];
+    int count = 0;
+    bounds[count++] = 0;
+    ByteBuffer buffer = ByteBuffer.allocate(4096);
+    long position = target;
+    while (position < size) {
+      // Move the boundary to just past the next newline.
+      boolean found = false;
+      while (!found && (position < size)) {
+        buffer.clear();
+        int read = channel.read(buffer, position);
+        for (int i = 0; (i < read) && !found; i++) {
+          position++;
+          found = (buffer.get(i) == '\n');
+        } // end of for loop
+      } // end of while loop
+      if (position < size) {
+        bounds[count++] = position;
+      } // end of if loop
+      position += target;
+    } // end of while loop
+    bounds[count++] = size;
+    return Arrays.copyOf(bounds, count);
+  } // chunkBounds(FileChannel, int)
+
+  /**
+   * Parse one chunk of a file, decoding values and sorting the mappings
+   * into buckets by their leading bits. A malformed line stops the
+   * parse and is recorded in the result, with its number within the
+   * chunk, rather than thrown, since only the caller knows the line on
+   * which the chunk starts.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param tree
+   *   The tree whose depth and codec to use.
+   * @param channel
+   *   The file.
+   * @param start
+   *   The offset of the first byte of the chunk.
+   * @param end
+   *   The offset just past the last byte of the chunk.
+   * @param split
+   *   The number of leading bits that select a bucket.
+   * @return
+   *   The mappings in the chunk, by bucket.
+   * @throws IOException
+   *   If the file cannot be read.
+   */
+  private static <V> Buckets<V> parse(BitTree<V> tree, FileChannel channel, long start,
+      long end, int split) throws IOException {
+    int free = tree.depth() - split;
+    Buckets<V> buckets = new Buckets<>(1 << split, new BitTreeValuePool<>(tree.codec()));
+    MappingParser parser = new MappingParser(tree.depth(), (bits, value, off, len, line) -> {
+      buckets.add((int) (bits >>> free), bits, buckets.pool.number(value, off, len));
+    });
+    MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    byte[] buffer = new byte[BitTree.LOAD_BUFFER_SIZE];
+    try {
+      while (map.hasRemaining()) {
+        int count = Math.min(buffer.length, map.remaining());
+        map.get(buffer, 0, count);
+        parser.parse(buffer, 0, count);
+      } // end of while loop
+      parser.finish();
+      buckets.lines = parser.line() - 1;
+    } catch (IllegalArgumentException e) {
+      String message = e.getMessage();
+      String prefix = MappingParser.message(parser.line(), "");
+      buckets.problem = message.startsWith(prefix) ? message.substring(prefix.length())
+          : message;
+      buckets.lines = parser.line();
+    } // end of try/catch
+    return buckets;
+  } // parse(BitTree, FileChannel, long, long, int)
+
+  /**
+   * Build the subtree for one bucket, applying the mappings from each
+   * chunk in file order.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param chunks
+   *   The mappings from each chunk, by bucket.
+   * @param bucket
+   *   The bucket.
+   * @param free
+   *   The number of bits below the subtree's root.
+   * @param counts
+   *   The number of values in each bucket's subtree, of which this
+   *   records only its own.
+   * @return
+   *   The root branch of the subtree, the bucket's value if there are
+   *   no bits below it, or null if the bucket is empty.
+   */
+  private static <V> Object subtree(List<Buckets<V>> chunks, int bucket, int free,
+      long[] counts) {
+    BitTree.Branch top = new BitTree.Branch();
+    Object last = null;
+    for (Buckets<V> chunk : chunks) {
+      long[] keys = chunk.keys[bucket];
+      int[] numbers = chunk.numbers[bucket];
+      if (numbers == null) {
+        continue;
+      } // end of if loop
+      if (free == 0) {
+        counts[bucket] = 1;
+        last = chunk.values[numbers[chunk.sizes[bucket] - 1]];
+        continue;
+      } // end of if loop
+      for (int i = 0; i < chunk.sizes[bucket]; i++) {
+        BitTree.Branch current = top;
+        for (int shift = free - 1; shift > 0; shift--) {
+          int bit = (int) (keys[i] >>> shift) & 1;
+          if (current.children[bit] == null) {
+            current.children[bit] = new BitTree.Branch();
+          } // end of if loop
+          current = (BitTree.Branch) current.children[bit];
+        } // end of for loop
+        int bit = (int) keys[i] & 1;
+        if (current.children[bit] == null) {
+          counts[bucket]++;
+        } // end of if loop
+        current.children[bit] = chunk.values[numbers[i]];
+      } // end of for loop
+    } // end of for loop
+    if (free == 0) {
+      return last;
+    } // end of if loop
+    return top.isEmpty() ? null : top;
+  } // subtree(List, int, int, long[])
+
+  /**
+   * Hang a subtree from the spine, adding branches as needed.
+   *
+   * @param root
+   *   The root of the tree.
+   * @param prefix
+   *   The leading bits shared by every key in the subtree.
+   * @param split
+   *   The number of bits in the prefix.
+   * @param subtree
+   *   The subtree, or the value if the prefix is a whole key.
+   */
+  private static void attach(BitTree.Branch root, long prefix, int split, Object subtree) {
+    BitTree.Branch current = root;
+    for (int shift = split - 1; shift > 0; shift--) {
+      int bit = (int) (prefix >>> shift) & 1;
+      if (current.children[bit] == null) {
+        current.children[bit] = new BitTree.Branch();
+      } // end of if loop
+      current = (BitTree.Branch) current.children[bit];
+    } // end of for loop
+    current.children[(int) prefix & 1] = subtree;
+  } // attach(Branch, long, int, Object)
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * The mappings parsed from one chunk, sorted into buckets by their
+   * leading bits, in the order they appear. Values are kept as numbers
+   * in the chunk's value pool until the pools are merged.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   */
+  private static class Buckets<V> {
+    /**
+     * The keys in each bucket.
+     */
+    final long[][] keys;
+
+    /**
+     * The numbers of the values in each bucket, or null if the bucket
+     * is empty.
+     */
+    final int[][] numbers;
+
+    /**
+     * The number of mappings in each bucket.
+     */
+    final int[] sizes;
+
+    /**
+     * The distinct values parsed from the chunk.
+     */
+    final BitTreeValuePool<V> pool;
+
+    /**
+     * The tree's instance of each value in the chunk's pool, by number,
+     * once the pools have been merged.
+     */
+    V[] values;
+
+    /**
+     * The number of lines in the chunk or, if a line is malformed, the
+     * number of that line within the chunk.
+     */
+    long lines;
+
+    /**
+     * What is wrong with the malformed line, or null if every line is
+     * well formed.
+     */
+    String problem;
+
+    /**
+     * Create empty buckets.
+     *
+     * @param count
+     *   The number of buckets.
+     * @param valuePool
+     *   The pool for values parsed from the chunk.
+     */
+    Buckets(int count, BitTreeValuePool<V> valuePool) {
+      this.keys = new long[count][];
+      this.numbers = new int[count][];
+      this.sizes = new int[count];
+      this.pool = valuePool;
+    } // Buckets(int, BitTreeValuePool)
+
+    /**
+     * Add a mapping to a bucket.
+     *
+     * @param bucket
+     *   The bucket.
+     * @param bits
+     *   The key.
+     * @param number
+     *   The number of the value in the chunk's pool.
+     */
+    void add(int bucket, long bits, int number) {
+      if (numbers[bucket] == null) {
+        keys[bucket] = new long[16];
+        numbers[bucket] = new int[16];
+      } // end of if loop
+      int size = sizes[bucket];
+      if (size == keys[bucket].length) {
+        keys[bucket] = Arrays.copyOf(keys[bucket], size * 2);
+        numbers[bucket] = Arrays.copyOf(numbers[bucket], size * 2);
+      } // end of if loop
+      keys[bucket][size] = bits;
+      numbers[bucket][size] = number;
+      sizes[bucket]++;
+    } // add(int, long, int)
+  } // class Buckets
+} // class BitTreeBuilder
@@ -0,0 +1,131 @@
+package edu.grinnell.csc207.util;
+
+/**
+ * Conversions between the values stored in a bit tree and the text
+ * used for them when a tree is loaded or dumped. Trees decode values
+ * once, as they are loaded, so lookups return them ready to use.
+ *
+ * @param <V>
+ *   The type of values stored in the tree.
+ *
+ * @author Slok Rajbhandari
+ */
+public interface BitTreeCodec<V> {
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Get the codec that stores text unchanged.
+   *
+   * @return
+   *   The codec for strings.
+   */
+  static BitTreeCodec<String> strings() {
+    return new BitTreeCodec<String>() {
+      @Override
+      public String decode(String text) {
+        return text;
+      } // decode(String)
+
+      @Override
+      public String encode(String value) {
+        return value;
+      } // encode(String)
+    };
+  } // strings()
+
+  /**
+   * Get a codec for integers written in the given radix.
+   *
+   * @param radix
+   *   The radix of the text form, such as 10 or 16.
+   * @return
+   *   The codec for integers.
+   */
+  static BitTreeCodec<Integer> integers(int radix) {
+    return new BitTreeCodec<Integer>() {
+      @Override
+      public Integer decode(String text) {
+        return Integer.parseInt(text, radix);
+      } // decode(String)
+
+      @Override
+      public String encode(Integer value) {
+        return Integer.toString(value, radix).toUpperCase();
+      } // encode(Integer)
+    };
+  } // integers(int)
+
+  /**
+   * Get a codec for characters written as themselves.
+   *
+   * @return
+   *   The codec for characters.
+   */
+  static BitTreeCodec<Character> characters() {
+    return new BitTreeCodec<Character>() {
+      @Override
+      public Character decode(String text) {
+        if (text.length() != 1) {
+          throw new IllegalArgumentException("Not a single character: " + text);
+        } // end of if loop
+        return text.charAt(0);
+      } // decode(String)
+
+      @Override
+      public String encode(Character value) {
+        return String.valueOf(value);
+      } // encode(Character)
+    };
+  } // characters()
+
+  /**
+   * Get a codec for characters written as numeric code points, such
+   * as "2801" in hexadecimal.
+   *
+   * @param radix
+   *   The radix of the code points.
+   * @return
+   *   The codec for characters.
+   */
+  static BitTreeCodec<Character> codePoints(int radix) {
+    return new BitTreeCodec<Character>() {
+      @Override
+      public Character decode(String text) {
+        return (char) Integer.parseInt(text, radix);
+      } // decode(String)
+
+      @Override
+      public String encode(Character value) {
+        return Integer.toString(value, radix).toUpperCase();
+      } // encode(Character)
+    };
+  } // codePoints(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Convert the text form of a value to the value.
+   *
+   * @param text
+   *   The text form.
+   * @return
+   *   The corresponding value.
+   * @throws IllegalArgumentException
+   *   If the text does not describe a value.
+   */
+  V decode(String text);
+
+  /**
+   * Convert a value to its text form.
+   *
+   * @param value
+   *   The value.
+   * @return
+   *   The text form, which <code>decode</code> turns back into the value.
+   */
+  String encode(V value);
+} // interface BitTreeCodec
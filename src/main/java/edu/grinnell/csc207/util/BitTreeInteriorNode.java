@@ -1,12 +1,16 @@
 package edu.grinnell.csc207.util;
 
 /**
- * Represents an interior node in a BitTree. Interior nodes do not store
- * values but instead connect to left and right child nodes.
+ * Represents an interior node in a BitTree. Interior nodes connect to
+ * left and right child nodes, and may also store the value for the
+ * prefix that leads to them, as set by <code>BitTree.setPrefix</code>.
+ *
+ * @param <V>
+ *   The type of values stored in the tree.
  *
  * @author Slok Rajbhandari
  */
-public class BitTreeInteriorNode implements BitTreeNode {
+public class BitTreeInteriorNode<V> implements BitTreeNode<V> {
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
@@ -14,40 +18,42 @@ public class BitTreeInteriorNode implements BitTreeNode {
   /**
    * The left child of this interior node.
    */
-  private BitTreeNode left;
+  private BitTreeNode<V> left;
 
   /**
    * The right child of this interior node.
    */
-  private BitTreeNode right;
+  private BitTreeNode<V> right;
+
+  /**
+   * The value for the prefix that leads to this node, if any.
+   */
+  private V value;
 
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
 
   /**
-   * Retrieve the value stored at this node.
+   * Retrieve the prefix value stored at this node.
    *
    * @return
-   *   Always null since interior nodes do not store values.
+   *   The value, or null if the prefix has none.
    */
   @Override
-  public String getValue() {
-    return null; // Interior nodes do not have values.
+  public V getValue() {
+    return this.value;
   } // getValue()
 
   /**
-   * Set the value at this node. This operation is unsupported for
-   * interior nodes.
+   * Set the prefix value at this node.
    *
    * @param value
-   *   The value to store.
-   * @throws UnsupportedOperationException
-   *   Always thrown since interior nodes cannot store values.
+   *   The value to store, or null to clear it.
    */
   @Override
-  public void setValue(String value) {
-    throw new UnsupportedOperationException("Interior nodes cannot store values.");
+  public void setValue(V value) {
+    this.value = value;
   } // setValue()
 
   /**
@@ -57,7 +63,7 @@ public class BitTreeInteriorNode implements BitTreeNode {
    *   The left child node, or null if none exists.
    */
   @Override
-  public BitTreeNode getLeft() {
+  public BitTreeNode<V> getLeft() {
     return left;
   } // getLeft()
 
@@ -68,7 +74,7 @@ public class BitTreeInteriorNode implements BitTreeNode {
    *   The node to set as the left child.
    */
   @Override
-  public void setLeft(BitTreeNode left) {
+  public void setLeft(BitTreeNode<V> left) {
     this.left = left;
   } // setLeft()
 
@@ -79,7 +85,7 @@ public class BitTreeInteriorNode implements BitTreeNode {
    *   The right child node, or null if none exists.
    */
   @Override
-  public BitTreeNode getRight() {
+  public BitTreeNode<V> getRight() {
     return right;
   } // getRight()
 
@@ -90,7 +96,7 @@ public class BitTreeInteriorNode implements BitTreeNode {
    *   The node to set as the right child.
    */
   @Override
-  public void setRight(BitTreeNode right) {
+  public void setRight(BitTreeNode<V> right) {
     this.right = right;
   } // setRight(BitTreeNode)
 } // class BitTreeInteriorNode
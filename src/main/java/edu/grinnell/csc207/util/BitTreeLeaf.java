@@ -4,9 +4,12 @@ package edu.grinnell.csc207.util;
  * Represents a leaf node in a BitTree. Leaf nodes store values and do
  * not have child nodes.
  *
+ * @param <V>
+ *   The type of values stored in the tree.
+ *
  * @author Slok
  */
-public class BitTreeLeaf implements BitTreeNode {
+public class BitTreeLeaf<V> implements BitTreeNode<V> {
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
@@ -14,7 +17,7 @@ public class BitTreeLeaf implements BitTreeNode {
   /**
    * The value stored in this leaf node.
    */
-  private String value;
+  private V value;
 
   // +---------+-----------------------------------------------------
   // | Methods |
@@ -27,7 +30,7 @@ public class BitTreeLeaf implements BitTreeNode {
    *   The value stored at this node.
    */
   @Override
-  public String getValue() {
+  public V getValue() {
     return value;
   } // getValue()
 
@@ -38,7 +41,7 @@ public class BitTreeLeaf implements BitTreeNode {
    *   The value to store in this leaf node.
    */
   @Override
-  public void setValue(String value) {
+  public void setValue(V value) {
     this.value = value;
   } // setValue()
 
@@ -49,7 +52,7 @@ public class BitTreeLeaf implements BitTreeNode {
    *   Always null since leaf nodes do not have children.
    */
   @Override
-  public BitTreeNode getLeft() {
+  public BitTreeNode<V> getLeft() {
     return null; // Leaves do not have children.
   } // getLeft()
 
@@ -63,7 +66,7 @@ public class BitTreeLeaf implements BitTreeNode {
    *   Always thrown since leaf nodes cannot have children.
    */
   @Override
-  public void setLeft(BitTreeNode left) {
+  public void setLeft(BitTreeNode<V> left) {
     throw new UnsupportedOperationException("Leaves cannot have children.");
   } // setLeft()
 
@@ -74,7 +77,7 @@ public class BitTreeLeaf implements BitTreeNode {
    *   Always null since leaf nodes do not have children.
    */
   @Override
-  public BitTreeNode getRight() {
+  public BitTreeNode<V> getRight() {
     return null; // Leaves do not have children.
   } // getRight()
 
@@ -88,7 +91,7 @@ public class BitTreeLeaf implements BitTreeNode {
    *   Always thrown since leaf nodes cannot have children.
    */
   @Override
-  public void setRight(BitTreeNode right) {
+  public void setRight(BitTreeNode<V> right) {
     throw new UnsupportedOperationException("Leaves cannot have children.");
   } // setRight()
 } // class BitTreeLeaf
@@ -5,9 +5,12 @@ package edu.grinnell.csc207.util;
  * interior nodes or leaves. Leaves store values, while interior nodes
  * connect to other nodes.
  *
+ * @param <V>
+ *   The type of values stored in the tree.
+ *
  * @author Slok Rajbhandari
  */
-public interface BitTreeNode {
+public interface BitTreeNode<V> {
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
@@ -18,7 +21,7 @@ public interface BitTreeNode {
    * @return
    *   The value stored at the node, or null if this is an interior node.
    */
-  String getValue();
+  V getValue();
 
   /**
    * Set the value stored at this node. This operation should only
@@ -27,7 +30,7 @@ public interface BitTreeNode {
    * @param value
    *   The value to store.
    */
-  void setValue(String value);
+  void setValue(V value);
 
   /**
    * Retrieve the left child of this node.
@@ -35,7 +38,7 @@ public interface BitTreeNode {
    * @return
    *   The left child node, or null if none exists.
    */
-  BitTreeNode getLeft();
+  BitTreeNode<V> getLeft();
 
   /**
    * Set the left child of this node.
@@ -43,7 +46,7 @@ public interface BitTreeNode {
    * @param left
    *   The node to set as the left child.
    */
-  void setLeft(BitTreeNode left);
+  void setLeft(BitTreeNode<V> left);
 
   /**
    * Retrieve the right child of this node.
@@ -51,7 +54,7 @@ public interface BitTreeNode {
    * @return
    *   The right child node, or null if none exists.
    */
-  BitTreeNode getRight();
+  BitTreeNode<V> getRight();
 
   /**
    * Set the right child of this node.
@@ -59,5 +62,5 @@ public interface BitTreeNode {
    * @param right
    *   The node to set as the right child.
    */
-  void setRight(BitTreeNode right);
+  void setRight(BitTreeNode<V> right);
 } // interface BitTreeNode
@@ -0,0 +1,154 @@
+package edu.grinnell.csc207.util;
+
+/**
+ * A read-only view of one node of a linked bit tree. The tree itself
+ * stores its nodes as branches whose last-level slots hold values
+ * directly, so a view of a leaf names the branch above it and the slot
+ * that holds its value. Views are made as they are asked for and see
+ * later changes to the tree.
+ *
+ * @param <V>
+ *   The type of values stored in the tree.
+ *
+ * @author Slok Rajbhandari
+ */
+final class BitTreeNodeView<V> implements BitTreeNode<V> {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The branch, or, for a leaf, the branch above it.
+   */
+  private final BitTree.Branch branch;
+
+  /**
+   * For a leaf, the slot of the branch that holds its value; -1 for
+   * the branch itself.
+   */
+  private final int slot;
+
+  /**
+   * The number of bits below the branch.
+   */
+  private final int remaining;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a view of a branch or of one of its leaves.
+   *
+   * @param node
+   *   The branch.
+   * @param leafSlot
+   *   The slot of the leaf, or -1 to view the branch itself.
+   * @param bitsBelow
+   *   The number of bits below the branch.
+   */
+  BitTreeNodeView(BitTree.Branch node, int leafSlot, int bitsBelow) {
+    this.branch = node;
+    this.slot = leafSlot;
+    this.remaining = bitsBelow;
+  } // BitTreeNodeView(Branch, int, int)
+
+  // +---------------+-----------------------------------------------
+  // | Local helpers |
+  // +---------------+
+
+  /**
+   * View one of the branch's children.
+   *
+   * @param bit
+   *   0 for the left child, 1 for the right.
+   * @return
+   *   The view, or null if there is no such child.
+   */
+  private BitTreeNode<V> child(int bit) {
+    if ((slot >= 0) || (branch.children[bit] == null)) {
+      return null;
+    } // end of if loop
+    if (remaining == 1) {
+      return new BitTreeNodeView<>(branch, bit, 0);
+    } // end of if loop
+    return new BitTreeNodeView<>((BitTree.Branch) branch.children[bit], -1, remaining - 1);
+  } // child(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Retrieve the value stored at this node.
+   *
+   * @return
+   *   The leaf's value or the branch's prefix value, or null if none.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public V getValue() {
+    return (V) ((slot >= 0) ? branch.children[slot] : branch.value);
+  } // getValue()
+
+  /**
+   * Views are read-only.
+   *
+   * @param value
+   *   Ignored.
+   * @throws UnsupportedOperationException
+   *   Always.
+   */
+  @Override
+  public void setValue(V value) {
+    throw new UnsupportedOperationException("Node views are read-only");
+  } // setValue(V)
+
+  /**
+   * Retrieve the left child of this node.
+   *
+   * @return
+   *   The left child node, or null if none exists.
+   */
+  @Override
+  public BitTreeNode<V> getLeft() {
+    return child(0);
+  } // getLeft()
+
+  /**
+   * Views are read-only.
+   *
+   * @param left
+   *   Ignored.
+   * @throws UnsupportedOperationException
+   *   Always.
+   */
+  @Override
+  public void setLeft(BitTreeNode<V> left) {
+    throw new UnsupportedOperationException("Node views are read-only");
+  } // setLeft(BitTreeNode)
+
+  /**
+   * Retrieve the right child of this node.
+   *
+   * @return
+   *   The right child node, or null if none exists.
+   */
+  @Override
+  public BitTreeNode<V> getRight() {
+    return child(1);
+  } // getRight()
+
+  /**
+   * Views are read-only.
+   *
+   * @param right
+   *   Ignored.
+   * @throws UnsupportedOperationException
+   *   Always.
+   */
+  @Override
+  public void setRight(BitTreeNode<V> right) {
+    throw new UnsupportedOperationException("Node views are read-only");
+  } // setRight(BitTreeNode)
+} // class BitTreeNodeView
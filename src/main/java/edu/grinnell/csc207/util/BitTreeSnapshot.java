@@ -0,0 +1,261 @@
+package edu.grinnell.csc207.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary format for bit trees. A snapshot is written once
+ * and then mapped into memory with <code>map</code>, which reads only
+ * the header and the pool of distinct values; lookups walk the node
+ * array in the mapped file directly.
+ *
+ * <p>All numbers are big-endian ints. A snapshot holds, in order:
+ * the magic number, the format version, the depth, the number of
+ * distinct values, and the number of nodes; the value pool, each value
+ * as a byte count followed by that many bytes of UTF-8 text, padded
+ * with zeros to a multiple of four bytes; and the nodes, each a pair
+ * of children for bits 0 and 1. Node 0 is the root. In nodes above the
+ * last level a child is the index of another node, or 0 if missing;
+ * in nodes at the last level a child is the complement of an index
+ * into the value pool, or 0 if missing.</p>
+ *
+ * @author Slok Rajbhandari
+ */
+public class BitTreeSnapshot {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The first four bytes of every snapshot, "BTSN".
+   */
+  static final int MAGIC = 0x4254534E;
+
+  /**
+   * The version of the format written by this class.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * The number of ints in the header.
+   */
+  static final int HEADER_INTS = 5;
+
+  /**
+   * The base-2 logarithm of the number of ints in each mapping of
+   * nodes, so that each mapping is 1 GB, within the 2 GB limit on one
+   * mapping.
+   */
+  static final int NODE_CHUNK_BITS = 28;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Prevent instantiation of this utility class.
+   */
+  private BitTreeSnapshot() {
+  } // BitTreeSnapshot()
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Write a snapshot of a tree to a file, replacing any existing file.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param tree
+   *   The tree to write. Values are written in the form given by the
+   *   tree's codec.
+   * @param file
+   *   The file to write.
+   * @throws IOException
+   *   If the file cannot be written.
+   */
+  public static <V> void write(BitTree<V> tree, Path file) throws IOException {
+    int depth = tree.depth();
+    Map<String, Integer> indices = new HashMap<>();
+    List<byte[]> pool = new ArrayList<>();
+    int[][] nodes = {new int[64]};
+    int[] nodeCount = {0};
+    tree.forEach((value, bits) -> {
+      String text = tree.codec().encode(value);
+      Integer index = indices.get(text);
+      if (index == null) {
+        index = pool.size();
+        indices.put(text, index);
+        pool.add(text.getBytes(StandardCharsets.UTF_8));
+      } // end of if loop
+      if (nodeCount[0] == 0) {
+        nodeCount[0] = 1;
+      } // end of if loop
+      int node = 0;
+      for (int shift = depth - 1; shift > 0; shift--) {
+        int slot = 2 * node + (int) ((bits >>> shift) & 1);
+        if (nodes[0][slot] == 0) {
+          if (2 * nodeCount[0] == nodes[0].length) {
+            nodes[0] = Arrays.copyOf(nodes[0], nodes[0].length * 2);
+          } // end of if loop
+          nodes[0][slot] = nodeCount[0]++;
+        } // end of if loop
+        node = nodes[0][slot];
+      } // end of for loop
+      nodes[0][2 * node + (int) (bits & 1)] = ~index;
+    });
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        Files.newOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(depth);
+      out.writeInt(pool.size());
+      out.writeInt(nodeCount[0]);
+      for (byte[] bytes : pool) {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      } // end of for loop
+      while (out.size() % Integer.BYTES != 0) {
+        out.writeByte(0);
+      } // end of while loop
+      for (int i = 0; i < 2 * nodeCount[0]; i++) {
+        out.writeInt(nodes[0][i]);
+      } // end of for loop
+    } // end of try
+  } // write(BitTree, Path)
+
+  /**
+   * Map a snapshot of a tree of strings.
+   *
+   * @param file
+   *   The snapshot.
+   * @return
+   *   A read-only tree backed by the mapped file.
+   * @throws IOException
+   *   If the file cannot be read, is not a snapshot, or has a corrupt
+   *   header or value.
+   */
+  public static BitTree<String> map(Path file) throws IOException {
+    return map(file, BitTreeCodec.strings());
+  } // map(Path)
+
+  /**
+   * Map a snapshot of a tree. Only the distinct values are decoded;
+   * the nodes are read from the mapped file as needed. The header and
+   * values are checked here; each node is checked when a lookup or scan
+   * first reaches it, and a corrupt one raises an
+   * <code>IllegalStateException</code> there.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param file
+   *   The snapshot.
+   * @param codec
+   *   Decodes the values in the snapshot.
+   * @return
+   *   A read-only tree backed by the mapped file.
+   * @throws IOException
+   *   If the file cannot be read, is not a snapshot, or has a corrupt
+   *   header or value.
+   */
+  public static <V> BitTree<V> map(Path file, BitTreeCodec<V> codec) throws IOException {
+    return map(file, codec, NODE_CHUNK_BITS);
+  } // map(Path, BitTreeCodec)
+
+  /**
+   * Map a snapshot of a tree, with its nodes in mappings of a given
+   * size.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param file
+   *   The snapshot.
+   * @param codec
+   *   Decodes the values in the snapshot.
+   * @param chunkBits
+   *   The base-2 logarithm of the number of ints in each mapping of
+   *   nodes, at most <code>NODE_CHUNK_BITS</code>.
+   * @return
+   *   A read-only tree backed by the mapped file.
+   * @throws IOException
+   *   If the file cannot be read, is not a snapshot, or has a corrupt
+   *   header or value.
+   */
+  @SuppressWarnings("unchecked")
+  static <V> BitTree<V> map(Path file, BitTreeCodec<V> codec, int chunkBits)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      // The header and value pool are read through one mapping, so they
+      // must fit in 2 GB; the nodes after them are mapped in chunks.
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          Math.min(size, Integer.MAX_VALUE));
+      if ((buffer.remaining() < HEADER_INTS * Integer.BYTES) || (buffer.getInt() != MAGIC)) {
+        throw new IOException(file + " is not a bit tree snapshot");
+      } // end of if loop
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported snapshot version " + version);
+      } // end of if loop
+      int depth = buffer.getInt();
+      int valueCount = buffer.getInt();
+      int nodeCount = buffer.getInt();
+      if ((depth < 1) || (depth > Long.SIZE)) {
+        throw new IOException(file + " is corrupt: depth " + depth);
+      } // end of if loop
+      if ((valueCount < 0) || (valueCount > buffer.remaining() / Integer.BYTES)) {
+        throw new IOException(file + " is corrupt: " + valueCount + " values");
+      } // end of if loop
+      if (nodeCount < 0) {
+        throw new IOException(file + " is corrupt: " + nodeCount + " nodes");
+      } // end of if loop
+
+      V[] values = (V[]) new Object[valueCount];
+      byte[] bytes = new byte[64];
+      for (int i = 0; i < valueCount; i++) {
+        int length = (buffer.remaining() < Integer.BYTES) ? -1 : buffer.getInt();
+        if ((length < 0) || (length > buffer.remaining())) {
+          throw new IOException(file + " is corrupt or truncated at value " + i);
+        } // end of if loop
+        if (length > bytes.length) {
+          bytes = new byte[length];
+        } // end of if loop
+        buffer.get(bytes, 0, length);
+        try {
+          values[i] = codec.decode(new String(bytes, 0, length, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+          throw new IOException(file + " has an invalid value " + i + ": " + e.getMessage(), e);
+        } // end of try/catch
+      } // end of for loop
+
+      long start = (buffer.position() + Integer.BYTES - 1) & -Integer.BYTES;
+      long ints = 2L * nodeCount;
+      if (size - start < ints * Integer.BYTES) {
+        throw new IOException(file + " is truncated");
+      } // end of if loop
+      long chunkInts = 1L << chunkBits;
+      IntBuffer[] nodes = new IntBuffer[(int) ((ints + chunkInts - 1) / chunkInts)];
+      for (int c = 0; c < nodes.length; c++) {
+        long count = Math.min(chunkInts, ints - c * chunkInts);
+        nodes[c] = channel.map(FileChannel.MapMode.READ_ONLY,
+            start + c * chunkInts * Integer.BYTES, count * Integer.BYTES).asIntBuffer();
+      } // end of for loop
+      return new MappedBitTree<>(depth, codec, nodes, chunkBits, nodeCount, values);
+    } // end of try
+  } // map(Path, BitTreeCodec, int)
+} // class BitTreeSnapshot
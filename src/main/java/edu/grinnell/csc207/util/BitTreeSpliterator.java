@@ -0,0 +1,249 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterators over the mappings of a bit tree whose keys fall in a
+ * range. Splitting halves the range, which for a range that covers
+ * whole subtrees splits at a subtree boundary. Advancing one mapping at
+ * a time scans the tree from the start of the remaining range into a
+ * buffer of up to <code>BATCH</code> mappings and then hands them out,
+ * so the pruned descent to the start of the range is paid once per
+ * batch rather than once per mapping.
+ *
+ * <p>Like the scans they are built on, these spliterators are weakly
+ * consistent when the tree changes while they are in use.</p>
+ *
+ * @param <V>
+ *   The type of values stored in the tree.
+ *
+ * @author Slok Rajbhandari
+ */
+class BitTreeSpliterator<V> implements Spliterator<Map.Entry<Long, V>> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The most mappings buffered by one scan.
+   */
+  static final int BATCH = 64;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The tree being traversed.
+   */
+  private final BitTree<V> tree;
+
+  /**
+   * The smallest key not yet scanned.
+   */
+  private long lo;
+
+  /**
+   * The largest key in the range.
+   */
+  private final long hi;
+
+  /**
+   * Whether every key in the range has been scanned. Buffered mappings
+   * may still be waiting to be visited.
+   */
+  private boolean done;
+
+  /**
+   * The keys of the buffered mappings, or null until the first batch.
+   */
+  private long[] keys;
+
+  /**
+   * The values of the buffered mappings, or null until the first
+   * batch.
+   */
+  private Object[] values;
+
+  /**
+   * The index of the next buffered mapping to visit.
+   */
+  private int next;
+
+  /**
+   * The number of buffered mappings.
+   */
+  private int count;
+
+  /**
+   * Adds each mapping a scan visits to the buffer, stopping the scan
+   * once the buffer is full.
+   */
+  private final BitTree.Visitor<V> collector = (value, bits) -> {
+    keys[count] = bits;
+    values[count] = value;
+    return ++count < BATCH;
+  };
+
+  /**
+   * The estimated number of mappings left.
+   */
+  private long estimate;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a spliterator over a range of keys.
+   *
+   * @param source
+   *   The tree to traverse.
+   * @param from
+   *   The smallest key in the range.
+   * @param to
+   *   The largest key in the range, no smaller than <code>from</code>
+   *   when compared as unsigned.
+   */
+  BitTreeSpliterator(BitTree<V> source, long from, long to) {
+    this(source, from, to, (Long.compareUnsigned(to - from, Long.MAX_VALUE) >= 0)
+        ? Long.MAX_VALUE : to - from + 1);
+  } // BitTreeSpliterator(BitTree, long, long)
+
+  /**
+   * Create a spliterator over a range of keys with a given estimate.
+   *
+   * @param source
+   *   The tree to traverse.
+   * @param from
+   *   The smallest key in the range.
+   * @param to
+   *   The largest key in the range.
+   * @param size
+   *   The estimated number of mappings in the range.
+   */
+  private BitTreeSpliterator(BitTree<V> source, long from, long to, long size) {
+    this.tree = source;
+    this.lo = from;
+    this.hi = to;
+    this.done = false;
+    this.estimate = size;
+    this.next = 0;
+    this.count = 0;
+  } // BitTreeSpliterator(BitTree, long, long, long)
+
+  // +---------------+-----------------------------------------------
+  // | Local helpers |
+  // +---------------+
+
+  /**
+   * Scan the next batch of mappings into the buffer.
+   *
+   * @return
+   *   True if the batch holds at least one mapping; false otherwise.
+   */
+  private boolean fill() {
+    if (keys == null) {
+      keys = new long[BATCH];
+      values = new Object[BATCH];
+    } // end of if loop
+    next = 0;
+    count = 0;
+    tree.scan(collector, lo, hi);
+    if ((count < BATCH) || (keys[count - 1] == hi)) {
+      done = true;
+    } else {
+      lo = keys[count - 1] + 1;
+    } // end of if loop
+    return count > 0;
+  } // fill()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Visit the next mapping, if there is one.
+   *
+   * @param action
+   *   The action to apply to the mapping.
+   * @return
+   *   True if there was a mapping to visit; false otherwise.
+   */
+  @Override
+  public boolean tryAdvance(Consumer<? super Map.Entry<Long, V>> action) {
+    if ((next == count) && (done || !fill())) {
+      return false;
+    } // end of if loop
+    @SuppressWarnings("unchecked")
+    V value = (V) values[next];
+    values[next] = null;
+    action.accept(Map.entry(keys[next++], value));
+    return true;
+  } // tryAdvance(Consumer)
+
+  /**
+   * Visit all remaining mappings: those buffered, then the rest of the
+   * range in a single scan.
+   *
+   * @param action
+   *   The action to apply to each mapping.
+   */
+  @Override
+  public void forEachRemaining(Consumer<? super Map.Entry<Long, V>> action) {
+    while (next < count) {
+      tryAdvance(action);
+    } // end of while loop
+    if (done) {
+      return;
+    } // end of if loop
+    done = true;
+    tree.scan((value, bits) -> {
+      action.accept(Map.entry(bits, value));
+      return true;
+    }, lo, hi);
+  } // forEachRemaining(Consumer)
+
+  /**
+   * Split off the lower half of the remaining range.
+   *
+   * @return
+   *   A spliterator over the lower half, or null if the range holds
+   *   a single key or mappings are buffered ahead of it.
+   */
+  @Override
+  public Spliterator<Map.Entry<Long, V>> trySplit() {
+    if (done || (next < count) || (lo == hi)) {
+      return null;
+    } // end of if loop
+    long mid = lo + ((hi - lo) >>> 1);
+    estimate >>>= 1;
+    Spliterator<Map.Entry<Long, V>> lower = new BitTreeSpliterator<>(tree, lo, mid, estimate);
+    lo = mid + 1;
+    return lower;
+  } // trySplit()
+
+  /**
+   * Estimate the number of mappings left.
+   *
+   * @return
+   *   An upper bound derived from the size of the remaining range.
+   */
+  @Override
+  public long estimateSize() {
+    return (done && (next == count)) ? 0 : estimate;
+  } // estimateSize()
+
+  /**
+   * Describe the elements of this spliterator.
+   *
+   * @return
+   *   The characteristics: ordered, distinct, and non-null.
+   */
+  @Override
+  public int characteristics() {
+    return ORDERED | DISTINCT | NONNULL;
+  } // characteristics()
+} // class BitTreeSpliterator
@@ -0,0 +1,295 @@
+package edu.grinnell.csc207.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Statistics for a bit tree, or for the braille tables. Lookup and
+ * load counters are kept in <code>LongAdder</code>s, which spread
+ * updates from different threads over separate cells, so recording a
+ * lookup costs little even on a hot path shared by many threads. The
+ * shape of the trees (nodes, leaves, and memory) is not counted as it
+ * changes, but measured when asked for.
+ *
+ * <p>There is no measure of the depth a lookup reaches. Every key of a
+ * tree has the same number of bits, so every hit walks the full depth,
+ * and recording where each miss stops would cost a counter update
+ * inside every variant's innermost loop.</p>
+ *
+ * <p>Statistics are opt-in; see <code>BitTree.setStatistics</code> and
+ * <code>BrailleAsciiTables.setStatistics</code>. They may be published
+ * as a JMX MBean with <code>register</code>.</p>
+ *
+ * @author Slok Rajbhandari
+ */
+public final class BitTreeStats implements BitTreeStatsMBean {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The JMX domain under which statistics are registered.
+   */
+  public static final String DOMAIN = "edu.grinnell.csc207.util";
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Supplies the trees whose shape is measured.
+   */
+  private final Supplier<List<BitTree<?>>> trees;
+
+  /**
+   * The number of lookups that found a value.
+   */
+  private final LongAdder hits = new LongAdder();
+
+  /**
+   * The number of lookups that found no value.
+   */
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * The number of loads timed.
+   */
+  private final LongAdder loads = new LongAdder();
+
+  /**
+   * The total time spent loading, in nanoseconds.
+   */
+  private final LongAdder loadNanos = new LongAdder();
+
+  /**
+   * The time spent in the most recent load, in nanoseconds.
+   */
+  private volatile long lastLoadNanos;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create statistics with every counter at zero.
+   *
+   * @param measured
+   *   Supplies the trees whose shape is measured, which may change
+   *   from one call to the next.
+   */
+  BitTreeStats(Supplier<List<BitTree<?>>> measured) {
+    this.trees = measured;
+  } // BitTreeStats(Supplier)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Record the outcome of one lookup.
+   *
+   * @param found
+   *   True if the lookup found a value; false otherwise.
+   */
+  void lookup(boolean found) {
+    (found ? hits : misses).increment();
+  } // lookup(boolean)
+
+  /**
+   * Record the outcome of a run of lookups.
+   *
+   * @param found
+   *   The number of lookups that found a value.
+   * @param missed
+   *   The number of lookups that found no value.
+   */
+  void lookups(long found, long missed) {
+    if (found != 0) {
+      hits.add(found);
+    } // end of if loop
+    if (missed != 0) {
+      misses.add(missed);
+    } // end of if loop
+  } // lookups(long, long)
+
+  /**
+   * Record a load.
+   *
+   * @param nanos
+   *   The time the load took, in nanoseconds.
+   */
+  void loaded(long nanos) {
+    loads.increment();
+    loadNanos.add(nanos);
+    lastLoadNanos = nanos;
+  } // loaded(long)
+
+  /**
+   * Get the number of lookups that found a value.
+   *
+   * @return
+   *   The number of hits.
+   */
+  @Override
+  public long getHits() {
+    return hits.sum();
+  } // getHits()
+
+  /**
+   * Get the number of lookups that found no value.
+   *
+   * @return
+   *   The number of misses.
+   */
+  @Override
+  public long getMisses() {
+    return misses.sum();
+  } // getMisses()
+
+  /**
+   * Get the number of loads timed.
+   *
+   * @return
+   *   The number of loads.
+   */
+  @Override
+  public long getLoads() {
+    return loads.sum();
+  } // getLoads()
+
+  /**
+   * Get the time spent in every load timed.
+   *
+   * @return
+   *   The total load time, in nanoseconds.
+   */
+  @Override
+  public long getLoadNanos() {
+    return loadNanos.sum();
+  } // getLoadNanos()
+
+  /**
+   * Get the time spent in the most recent load.
+   *
+   * @return
+   *   The load time, in nanoseconds, or 0 if nothing has been loaded.
+   */
+  @Override
+  public long getLastLoadNanos() {
+    return lastLoadNanos;
+  } // getLastLoadNanos()
+
+  /**
+   * Count the nodes of the trees measured: interior nodes and one leaf
+   * for each mapping, as <code>BitTree.nodeCount</code> defines them.
+   *
+   * @return
+   *   The number of nodes.
+   */
+  @Override
+  public long getNodes() {
+    long nodes = 0;
+    for (BitTree<?> tree : trees.get()) {
+      nodes += tree.nodeCount();
+    } // end of for loop
+    return nodes;
+  } // getNodes()
+
+  /**
+   * Count the values stored in the trees measured.
+   *
+   * @return
+   *   The number of leaves.
+   */
+  @Override
+  public long getLeaves() {
+    long leaves = 0;
+    for (BitTree<?> tree : trees.get()) {
+      leaves += tree.size();
+    } // end of for loop
+    return leaves;
+  } // getLeaves()
+
+  /**
+   * Estimate the memory used by the structure of the trees measured,
+   * not counting the values themselves.
+   *
+   * @return
+   *   The estimate, in bytes.
+   */
+  @Override
+  public long getMemoryEstimate() {
+    long bytes = 0;
+    for (BitTree<?> tree : trees.get()) {
+      bytes += tree.memoryEstimate();
+    } // end of for loop
+    return bytes;
+  } // getMemoryEstimate()
+
+  /**
+   * Set the hit, miss, and load counters back to zero.
+   */
+  @Override
+  public void reset() {
+    hits.reset();
+    misses.reset();
+    loads.reset();
+    loadNanos.reset();
+    lastLoadNanos = 0;
+  } // reset()
+
+  /**
+   * Register these statistics with the platform MBean server, so that
+   * JMX clients such as JConsole can read them.
+   *
+   * @param name
+   *   The name to register them under, within <code>DOMAIN</code>.
+   * @return
+   *   The object name under which they were registered.
+   * @throws IllegalArgumentException
+   *   If the name is malformed or already registered.
+   */
+  public ObjectName register(String name) {
+    try {
+      ObjectName objectName =
+          new ObjectName(DOMAIN + ":type=BitTreeStats,name=" + ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+      return objectName;
+    } catch (MalformedObjectNameException e) {
+      throw new IllegalArgumentException("Invalid name: " + name, e);
+    } catch (JMException e) {
+      throw new IllegalArgumentException("Cannot register " + name + ": " + e.getMessage(), e);
+    } // end of try/catch
+  } // register(String)
+
+  /**
+   * Summarize the statistics.
+   *
+   * @return
+   *   A one-line report, such as "64 leaves in 127 nodes (~6096 bytes);
+   *   lookups: 90 hits, 10 misses; loads: 1 in 2.5 ms".
+   */
+  public String report() {
+    return String.format(Locale.ROOT,
+        "%d leaves in %d nodes (~%d bytes); lookups: %d hits, %d misses; loads: %d in %.1f ms",
+        getLeaves(), getNodes(), getMemoryEstimate(), getHits(), getMisses(), getLoads(),
+        getLoadNanos() / 1e6);
+  } // report()
+
+  /**
+   * Summarize the statistics.
+   *
+   * @return
+   *   The same report as <code>report</code>.
+   */
+  @Override
+  public String toString() {
+    return report();
+  } // toString()
+} // class BitTreeStats
@@ -0,0 +1,84 @@
+package edu.grinnell.csc207.util;
+
+/**
+ * The management interface of <code>BitTreeStats</code>, through which
+ * JMX clients read the statistics of a tree or of the braille tables.
+ *
+ * @author Slok Rajbhandari
+ */
+public interface BitTreeStatsMBean {
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of lookups that found a value.
+   *
+   * @return
+   *   The number of hits.
+   */
+  long getHits();
+
+  /**
+   * Get the number of lookups that found no value.
+   *
+   * @return
+   *   The number of misses.
+   */
+  long getMisses();
+
+  /**
+   * Get the number of loads timed.
+   *
+   * @return
+   *   The number of loads.
+   */
+  long getLoads();
+
+  /**
+   * Get the time spent in every load timed.
+   *
+   * @return
+   *   The total load time, in nanoseconds.
+   */
+  long getLoadNanos();
+
+  /**
+   * Get the time spent in the most recent load.
+   *
+   * @return
+   *   The load time, in nanoseconds, or 0 if nothing has been loaded.
+   */
+  long getLastLoadNanos();
+
+  /**
+   * Count the nodes of the trees measured: interior nodes and one leaf
+   * for each mapping, as <code>BitTree.nodeCount</code> defines them.
+   *
+   * @return
+   *   The number of nodes.
+   */
+  long getNodes();
+
+  /**
+   * Count the values stored in the trees measured.
+   *
+   * @return
+   *   The number of leaves.
+   */
+  long getLeaves();
+
+  /**
+   * Estimate the memory used by the structure of the trees measured,
+   * not counting the values themselves.
+   *
+   * @return
+   *   The estimate, in bytes.
+   */
+  long getMemoryEstimate();
+
+  /**
+   * Set the hit, miss, and load counters back to zero.
+   */
+  void reset();
+} // interface BitTreeStatsMBean
@@ -0,0 +1,327 @@
+package edu.grinnell.csc207.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Pools of the distinct values loaded into a bit tree. Values are
+ * interned by their UTF-8 text, straight from the loader's buffer, so a
+ * value that appears on many lines is decoded once and stored once, and
+ * every leaf that holds it shares the one instance. Repeated values
+ * cost neither a new string nor a call to the codec.
+ *
+ * <p>Each distinct value is numbered in the order it was first seen.
+ * The pool also counts the values it is asked to intern, which gives a
+ * report of how much sharing a load achieved.</p>
+ *
+ * <p>Pools are safe to use from several threads, so that concurrent
+ * trees may be loaded from more than one thread at a time.</p>
+ *
+ * @param <V>
+ *   The type of values stored in the tree.
+ *
+ * @author Slok Rajbhandari
+ */
+public class BitTreeValuePool<V> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The initial number of slots in the hash table.
+   */
+  static final int INITIAL_CAPACITY = 16;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Converts text to values.
+   */
+  private final BitTreeCodec<V> codec;
+
+  /**
+   * The hash table, open-addressed with linear probing. Each slot
+   * holds one more than the number of a value, or 0 if it is empty.
+   */
+  private int[] table;
+
+  /**
+   * The UTF-8 text of each value, by number.
+   */
+  private byte[][] texts;
+
+  /**
+   * The hash of each value's text, by number.
+   */
+  private int[] hashes;
+
+  /**
+   * The decoded values, by number.
+   */
+  private Object[] values;
+
+  /**
+   * The number of distinct values.
+   */
+  private int distinct;
+
+  /**
+   * The number of values interned, counting repeats.
+   */
+  private long interned;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty pool.
+   *
+   * @param valueCodec
+   *   Converts the text of new values to values.
+   */
+  BitTreeValuePool(BitTreeCodec<V> valueCodec) {
+    this.codec = valueCodec;
+    this.table = new int[INITIAL_CAPACITY];
+    this.texts = new byte[INITIAL_CAPACITY][];
+    this.hashes = new int[INITIAL_CAPACITY];
+    this.values = new Object[INITIAL_CAPACITY];
+    this.distinct = 0;
+    this.interned = 0;
+  } // BitTreeValuePool(BitTreeCodec)
+
+  // +---------------+-----------------------------------------------
+  // | Local helpers |
+  // +---------------+
+
+  /**
+   * Hash a range of bytes.
+   *
+   * @param bytes
+   *   The array holding the bytes.
+   * @param off
+   *   The index of the first byte.
+   * @param len
+   *   The number of bytes.
+   * @return
+   *   The hash, with its high bits folded into its low ones.
+   */
+  private static int hash(byte[] bytes, int off, int len) {
+    int h = 1;
+    for (int i = off; i < off + len; i++) {
+      h = 31 * h + bytes[i];
+    } // end of for loop
+    return h ^ (h >>> 16);
+  } // hash(byte[], int, int)
+
+  /**
+   * Find the number of the value with the given text.
+   *
+   * @param bytes
+   *   The array holding the text.
+   * @param off
+   *   The index of the first byte of the text.
+   * @param len
+   *   The number of bytes in the text.
+   * @param hash
+   *   The hash of the text.
+   * @return
+   *   The number of the value, or -1 if the pool does not hold it.
+   */
+  private int find(byte[] bytes, int off, int len, int hash) {
+    int mask = table.length - 1;
+    for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+      int entry = table[slot] - 1;
+      if ((hashes[entry] == hash)
+          && Arrays.equals(texts[entry], 0, texts[entry].length, bytes, off, off + len)) {
+        return entry;
+      } // end of if loop
+    } // end of for loop
+    return -1;
+  } // find(byte[], int, int, int)
+
+  /**
+   * Add a new value to the pool, growing it as needed.
+   *
+   * @param text
+   *   The UTF-8 text of the value, which the pool keeps.
+   * @param hash
+   *   The hash of the text.
+   * @param value
+   *   The value.
+   * @return
+   *   The number of the value.
+   */
+  private int add(byte[] text, int hash, Object value) {
+    if (distinct == values.length) {
+      texts = Arrays.copyOf(texts, distinct * 2);
+      hashes = Arrays.copyOf(hashes, distinct * 2);
+      values = Arrays.copyOf(values, distinct * 2);
+    } // end of if loop
+    texts[distinct] = text;
+    hashes[distinct] = hash;
+    values[distinct] = value;
+    if (4 * (distinct + 1) > 3 * table.length) {
+      table = new int[table.length * 2];
+      for (int entry = 0; entry < distinct; entry++) {
+        place(entry);
+      } // end of for loop
+    } // end of if loop
+    place(distinct);
+    return distinct++;
+  } // add(byte[], int, Object)
+
+  /**
+   * Put a value's number in the first free slot of its probe sequence.
+   *
+   * @param entry
+   *   The number of the value.
+   */
+  private void place(int entry) {
+    int mask = table.length - 1;
+    int slot = hashes[entry] & mask;
+    while (table[slot] != 0) {
+      slot = (slot + 1) & mask;
+    } // end of while loop
+    table[slot] = entry + 1;
+  } // place(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of the pooled value for some UTF-8 text, decoding
+   * and adding it only if the pool has not seen the text before.
+   *
+   * @param bytes
+   *   The array holding the text, which the pool does not keep.
+   * @param off
+   *   The index of the first byte of the text.
+   * @param len
+   *   The number of bytes in the text.
+   * @return
+   *   The number of the value.
+   * @throws IllegalArgumentException
+   *   If the codec cannot decode the text.
+   */
+  synchronized int number(byte[] bytes, int off, int len) {
+    int hash = hash(bytes, off, len);
+    int entry = find(bytes, off, len, hash);
+    if (entry < 0) {
+      V value = codec.decode(new String(bytes, off, len, StandardCharsets.UTF_8));
+      entry = add(Arrays.copyOfRange(bytes, off, off + len), hash, value);
+    } // end of if loop
+    interned++;
+    return entry;
+  } // number(byte[], int, int)
+
+  /**
+   * Get a pooled value by number.
+   *
+   * @param number
+   *   The number of the value.
+   * @return
+   *   The value.
+   */
+  @SuppressWarnings("unchecked")
+  synchronized V value(int number) {
+    return (V) values[number];
+  } // value(int)
+
+  /**
+   * Get the pooled value for some UTF-8 text, decoding and adding it
+   * only if the pool has not seen the text before.
+   *
+   * @param bytes
+   *   The array holding the text, which the pool does not keep.
+   * @param off
+   *   The index of the first byte of the text.
+   * @param len
+   *   The number of bytes in the text.
+   * @return
+   *   The value.
+   * @throws IllegalArgumentException
+   *   If the codec cannot decode the text.
+   */
+  synchronized V intern(byte[] bytes, int off, int len) {
+    return value(number(bytes, off, len));
+  } // intern(byte[], int, int)
+
+  /**
+   * Merge another pool into this one, so that values it shares with
+   * this pool are replaced by this pool's instances. Its counts are
+   * added to this pool's.
+   *
+   * @param other
+   *   The pool to merge, which is not changed.
+   * @return
+   *   This pool's instance of each of the other pool's values, indexed
+   *   by the other pool's numbering.
+   */
+  @SuppressWarnings("unchecked")
+  synchronized V[] merge(BitTreeValuePool<V> other) {
+    synchronized (other) {
+      V[] merged = (V[]) new Object[other.distinct];
+      for (int i = 0; i < other.distinct; i++) {
+        byte[] text = other.texts[i];
+        int entry = find(text, 0, text.length, other.hashes[i]);
+        if (entry < 0) {
+          entry = add(text, other.hashes[i], other.values[i]);
+        } // end of if loop
+        merged[i] = (V) values[entry];
+      } // end of for loop
+      interned += other.interned;
+      return merged;
+    } // end of synchronized
+  } // merge(BitTreeValuePool)
+
+  /**
+   * Get the number of distinct values in the pool.
+   *
+   * @return
+   *   The number of distinct values.
+   */
+  public synchronized int distinct() {
+    return distinct;
+  } // distinct()
+
+  /**
+   * Get the number of values the pool has been asked to intern,
+   * counting repeats.
+   *
+   * @return
+   *   The number of values interned.
+   */
+  public synchronized long interned() {
+    return interned;
+  } // interned()
+
+  /**
+   * Get the number of interned values that shared an existing instance
+   * rather than creating a new one.
+   *
+   * @return
+   *   The number of duplicates eliminated.
+   */
+  public synchronized long duplicates() {
+    return interned - distinct;
+  } // duplicates()
+
+  /**
+   * Summarize how much sharing the pool has achieved.
+   *
+   * @return
+   *   A one-line report, such as
+   *   "Interned 128 values: 64 distinct, 64 duplicates (50.0%)".
+   */
+  public synchronized String report() {
+    double percent = (interned == 0) ? 0 : 100.0 * (interned - distinct) / interned;
+    return String.format(Locale.ROOT,
+        "Interned %d values: %d distinct, %d duplicates (%.1f%%)", interned, distinct,
+        interned - distinct, percent);
+  } // report()
+} // class BitTreeValuePool
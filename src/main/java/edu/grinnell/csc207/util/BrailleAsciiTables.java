@@ -3,6 +3,8 @@ package edu.grinnell.csc207.util;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
 
 /**
  * Utility class for conversions between Braille, ASCII, and Unicode.
@@ -180,24 +182,266 @@ public class BrailleAsciiTables {
   // +---------------+
 
   /**
-   * The tree for ASCII-to-Braille conversions.
+   * The bit strings of the 64 Braille cells, indexed by cell.
    */
-  static BitTree a2bTree = null;
+  private static final String[] CELL_BITS = new String[64];
+
+  static {
+    for (int cell = 0; cell < CELL_BITS.length; cell++) {
+      String bits = Integer.toBinaryString(cell | CELL_BITS.length);
+      CELL_BITS[cell] = bits.substring(1);
+    } // end of for loop
+  } // static
+
+  /**
+   * The statistics for conversions, or null if they are not kept.
+   */
+  private static volatile BitTreeStats stats;
+
+  // +---------------+-----------------------------------------------
+  // | Local helpers |
+  // +---------------+
+
+  /**
+   * Count the outcome of one lookup, if statistics are on.
+   *
+   * @param found
+   *   True if the lookup found a translation; false otherwise.
+   */
+  private static void count(boolean found) {
+    BitTreeStats counters = stats;
+    if (counters != null) {
+      counters.lookup(found);
+    } // end of if loop
+  } // count(boolean)
 
   /**
-   * The tree for Braille-to-ASCII conversions.
+   * Count the outcome of a run of lookups, if statistics are on.
+   *
+   * @param found
+   *   The number of lookups that found a translation.
+   * @param missed
+   *   The number of lookups that found none.
    */
-  static BitTree b2aTree = null;
+  private static void count(long found, long missed) {
+    BitTreeStats counters = stats;
+    if (counters != null) {
+      counters.lookups(found, missed);
+    } // end of if loop
+  } // count(long, long)
 
   /**
-   * The tree for Braille-to-Unicode conversions.
+   * Convert six '0' and '1' characters to a Braille cell, with the
+   * first character as the most significant bit.
+   *
+   * @param bits
+   *   The string containing the characters.
+   * @param start
+   *   The index of the first character.
+   * @return
+   *   The cell, between 0 and 63.
+   * @throws IndexOutOfBoundsException
+   *   If the characters are not all '0' or '1'.
    */
-  static BitTree b2uTree = null;
+  static int toCell(String bits, int start) {
+    int cell = 0;
+    for (int i = start; i < start + 6; i++) {
+      char c = bits.charAt(i);
+      if ((c != '0') && (c != '1')) {
+        throw new IndexOutOfBoundsException("Invalid bit sequence");
+      } // end of if loop
+      cell = (cell << 1) | (c - '0');
+    } // end of for loop
+    return cell;
+  } // toCell(String, int)
+
+  /**
+   * Get the bit string of a Braille cell.
+   *
+   * @param cell
+   *   The cell, between 0 and 63.
+   * @return
+   *   The six '0' and '1' characters of the cell.
+   */
+  static String cellBits(int cell) {
+    return CELL_BITS[cell];
+  } // cellBits(int)
+
+  /**
+   * Find the Braille cell for an ASCII character.
+   *
+   * @param letter
+   *   The character.
+   * @return
+   *   The cell, between 0 and 63.
+   * @throws IndexOutOfBoundsException
+   *   If the character has no Braille equivalent.
+   */
+  public static int cellFor(char letter) {
+    int cell = cellForOrDefault(letter, -1);
+    if (cell < 0) {
+      throw new IndexOutOfBoundsException("No value found at path");
+    } // end of if loop
+    return cell;
+  } // cellFor(char)
+
+  /**
+   * Find the Braille cell for an ASCII character, or a default if it
+   * has none. Never throws.
+   *
+   * @param letter
+   *   The character.
+   * @param defaultCell
+   *   The value to return if the character has no cell.
+   * @return
+   *   The cell, between 0 and 63, or <code>defaultCell</code>.
+   */
+  public static int cellForOrDefault(char letter, int defaultCell) {
+    byte[] cells = Holder.current.a2bCells;
+    if ((letter >= cells.length) || (cells[letter] < 0)) {
+      count(false);
+      return defaultCell;
+    } // end of if loop
+    count(true);
+    return cells[letter];
+  } // cellForOrDefault(char, int)
+
+  /**
+   * Find the ASCII character for a Braille cell.
+   *
+   * @param cell
+   *   The cell, between 0 and 63.
+   * @return
+   *   The character.
+   * @throws IndexOutOfBoundsException
+   *   If the cell has no ASCII equivalent.
+   */
+  public static char asciiFor(int cell) {
+    char letter = asciiForOrDefault(cell, (char) 0);
+    if (letter == 0) {
+      throw new IndexOutOfBoundsException("No value found at path");
+    } // end of if loop
+    return letter;
+  } // asciiFor(int)
+
+  /**
+   * Find the ASCII character for a Braille cell, or a default if it
+   * has none.
+   *
+   * @param cell
+   *   The cell, between 0 and 63.
+   * @param defaultChar
+   *   The value to return if the cell has no character.
+   * @return
+   *   The character, or <code>defaultChar</code>.
+   */
+  public static char asciiForOrDefault(int cell, char defaultChar) {
+    char letter = Holder.current.b2aChars[cell];
+    count(letter != 0);
+    return (letter == 0) ? defaultChar : letter;
+  } // asciiForOrDefault(int, char)
+
+  /**
+   * Find the Unicode character for a Braille cell.
+   *
+   * @param cell
+   *   The cell, between 0 and 63.
+   * @return
+   *   The character.
+   * @throws IndexOutOfBoundsException
+   *   If the cell has no Unicode equivalent.
+   */
+  public static char unicodeFor(int cell) {
+    char unicode = unicodeForOrDefault(cell, (char) 0);
+    if (unicode == 0) {
+      throw new IndexOutOfBoundsException("No value found at path");
+    } // end of if loop
+    return unicode;
+  } // unicodeFor(int)
+
+  /**
+   * Find the Unicode character for a Braille cell, or a default if it
+   * has none.
+   *
+   * @param cell
+   *   The cell, between 0 and 63.
+   * @param defaultChar
+   *   The value to return if the cell has no character.
+   * @return
+   *   The character, or <code>defaultChar</code>.
+   */
+  public static char unicodeForOrDefault(int cell, char defaultChar) {
+    char unicode = Holder.current.b2uChars[cell];
+    count(unicode != 0);
+    return (unicode == 0) ? defaultChar : unicode;
+  } // unicodeForOrDefault(int, char)
 
   // +----------------+----------------------------------------------
   // | Static methods |
   // +----------------+
 
+  /**
+   * Replace the translation tables with ones loaded from CSV sources
+   * in the same format as <code>a2b</code>, <code>b2a</code>, and
+   * <code>b2u</code>. The sources are closed once loaded. Conversions
+   * running in other threads see either the old tables or the new
+   * ones, never a mixture.
+   *
+   * @param a2bSource
+   *   Mappings from 8-bit ASCII codes to Braille cells.
+   * @param b2aSource
+   *   Mappings from Braille cells to ASCII characters.
+   * @param b2uSource
+   *   Mappings from Braille cells to hexadecimal Unicode code points.
+   * @throws IllegalArgumentException
+   *   If a source is malformed, or an ASCII code maps to anything but
+   *   six '0' and '1' characters. The current tables are left in
+   *   place.
+   */
+  public static void reload(InputStream a2bSource, InputStream b2aSource,
+      InputStream b2uSource) {
+    Tables tables = new Tables(a2bSource, b2aSource, b2uSource);
+    Holder.current = tables;
+    BitTreeStats counters = stats;
+    if (counters != null) {
+      counters.loaded(tables.loadNanos);
+    } // end of if loop
+  } // reload(InputStream, InputStream, InputStream)
+
+  /**
+   * Get the statistics for conversions: the shape of the trees behind
+   * the current tables, the outcome of each character or cell looked
+   * up, and the time spent loading tables.
+   *
+   * @return
+   *   The statistics, or null if they are not kept.
+   */
+  public static BitTreeStats stats() {
+    return stats;
+  } // stats()
+
+  /**
+   * Turn statistics for conversions on or off. Statistics are off by
+   * default. When they are turned on, they start with the load of the
+   * current tables; later reloads are added as they happen.
+   *
+   * @param on
+   *   True to keep statistics, starting from zero if they were off;
+   *   false to stop keeping them.
+   */
+  public static synchronized void setStatistics(boolean on) {
+    if (!on) {
+      stats = null;
+    } else if (stats == null) {
+      BitTreeStats counters = new BitTreeStats(() -> {
+        Tables tables = Holder.current;
+        return List.of(tables.a2bTree, tables.b2aTree, tables.b2uTree);
+      });
+      counters.loaded(Holder.current.loadNanos);
+      stats = counters;
+    } // end of if loop
+  } // setStatistics(boolean)
+
   /**
    * Convert an ASCII character to its corresponding Braille bit string.
    *
@@ -205,23 +449,11 @@ public class BrailleAsciiTables {
    *   The ASCII character to convert.
    * @return
    *   The Braille bit string corresponding to the ASCII character.
+   * @throws IndexOutOfBoundsException
+   *   If the character has no Braille equivalent.
    */
   public static String toBraille(char letter) {
-    if (a2bTree == null) {
-      a2bTree = new BitTree(8);
-      InputStream stream = new ByteArrayInputStream(a2b.getBytes());
-      a2bTree.load(stream);
-      try {
-        stream.close();
-      } catch (IOException e) {
-        // Ignore closing errors
-      } // end of try/catch
-    } // end of if loop
-    String bits = Integer.toBinaryString(letter);
-    while (bits.length() < 8) {
-      bits = "0" + bits; // Ensure 8-bit encoding
-    } // end of while
-    return a2bTree.get(bits);
+    return CELL_BITS[cellFor(letter)];
   } // toBraille(char)
 
   /**
@@ -233,32 +465,22 @@ public class BrailleAsciiTables {
    *   The ASCII character corresponding to the Braille bit string.
    */
   public static String toAscii(String bits) throws IndexOutOfBoundsException {
-    if (b2aTree == null) {
-      b2aTree = new BitTree(6);
-      InputStream stream = new ByteArrayInputStream(b2a.getBytes());
-      b2aTree.load(stream);
-      try {
-        stream.close();
-      } catch (IOException e) {
-        // Ignore closing errors
-      } // end of try/catch
-    } // end of if loop
-
     // Validating String output
     if (bits.length() % 6 != 0) {
       throw new IndexOutOfBoundsException("Incorrect number of bits passed");
     } // end of if loop
 
-    String result = "";
-    String currentLetter;
-    int letterBitLength = 6;
-    for (int i = 0; i < bits.length(); i += letterBitLength) {
-      currentLetter = bits.substring(i, i + letterBitLength);
-      result += b2aTree.get(currentLetter);
-
+    char[] letters = Holder.current.b2aChars;
+    char[] result = new char[bits.length() / 6];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = letters[toCell(bits, i * 6)];
+      if (result[i] == 0) {
+        count(i, 1);
+        throw new IndexOutOfBoundsException("No value found at path");
+      } // end of if loop
     } // end of for loop
-
-    return result;
+    count(result.length, 0);
+    return new String(result);
   } // toAscii(String)
 
   /**
@@ -270,18 +492,353 @@ public class BrailleAsciiTables {
    *   The Unicode character corresponding to the Braille bit string.
    */
   public static String toUnicode(String bits) {
-    if (b2uTree == null) {
-      b2uTree = new BitTree(6);
-      InputStream stream = new ByteArrayInputStream(b2u.getBytes());
-      b2uTree.load(stream);
+    if (bits.length() != 6) {
+      throw new IndexOutOfBoundsException("Invalid bit sequence");
+    } // end of if loop
+    return String.valueOf(unicodeFor(toCell(bits, 0)));
+  } // toUnicode(String)
+
+  /**
+   * Convert a range of ASCII characters to Braille cells. Each cell is
+   * its bit string read as a binary number, so "100000" is 32.
+   *
+   * @param src
+   *   The characters to convert.
+   * @param srcOff
+   *   The index of the first character to convert.
+   * @param len
+   *   The number of characters to convert.
+   * @param dst
+   *   The array to hold the cells.
+   * @param dstOff
+   *   The index at which to store the first cell.
+   * @throws IndexOutOfBoundsException
+   *   If either range is out of bounds or a character has no Braille
+   *   equivalent.
+   */
+  public static void toBraille(char[] src, int srcOff, int len, byte[] dst, int dstOff) {
+    Objects.checkFromIndexSize(srcOff, len, src.length);
+    Objects.checkFromIndexSize(dstOff, len, dst.length);
+    byte[] cells = Holder.current.a2bCells;
+    for (int i = 0; i < len; i++) {
+      char letter = src[srcOff + i];
+      byte cell = (letter < cells.length) ? cells[letter] : -1;
+      if (cell < 0) {
+        count(i, 1);
+        throw new IndexOutOfBoundsException("No value found at path for character "
+            + (srcOff + i));
+      } // end of if loop
+      dst[dstOff + i] = cell;
+    } // end of for loop
+    count(len, 0);
+  } // toBraille(char[], int, int, byte[], int)
+
+  /**
+   * Convert a range of Braille cells to ASCII characters.
+   *
+   * @param cells
+   *   The cells to convert, each between 0 and 63.
+   * @param srcOff
+   *   The index of the first cell to convert.
+   * @param len
+   *   The number of cells to convert.
+   * @param dst
+   *   The array to hold the characters.
+   * @param dstOff
+   *   The index at which to store the first character.
+   * @throws IndexOutOfBoundsException
+   *   If either range is out of bounds or a cell is invalid or has no
+   *   ASCII equivalent.
+   */
+  public static void toAscii(byte[] cells, int srcOff, int len, char[] dst, int dstOff) {
+    Objects.checkFromIndexSize(srcOff, len, cells.length);
+    Objects.checkFromIndexSize(dstOff, len, dst.length);
+    translate(Holder.current.b2aChars, cells, srcOff, len, dst, dstOff);
+  } // toAscii(byte[], int, int, char[], int)
+
+  /**
+   * Convert a range of Braille cells to Unicode Braille characters.
+   *
+   * @param cells
+   *   The cells to convert, each between 0 and 63.
+   * @param srcOff
+   *   The index of the first cell to convert.
+   * @param len
+   *   The number of cells to convert.
+   * @param dst
+   *   The array to hold the characters.
+   * @param dstOff
+   *   The index at which to store the first character.
+   * @throws IndexOutOfBoundsException
+   *   If either range is out of bounds or a cell is invalid or has no
+   *   Unicode equivalent.
+   */
+  public static void toUnicode(byte[] cells, int srcOff, int len, char[] dst, int dstOff) {
+    Objects.checkFromIndexSize(srcOff, len, cells.length);
+    Objects.checkFromIndexSize(dstOff, len, dst.length);
+    translate(Holder.current.b2uChars, cells, srcOff, len, dst, dstOff);
+  } // toUnicode(byte[], int, int, char[], int)
+
+  /**
+   * Translate a range of cells through a compiled table. The ranges
+   * must already have been checked.
+   *
+   * @param table
+   *   The character for each cell, or 0 for none.
+   * @param cells
+   *   The cells to convert.
+   * @param srcOff
+   *   The index of the first cell to convert.
+   * @param len
+   *   The number of cells to convert.
+   * @param dst
+   *   The array to hold the characters.
+   * @param dstOff
+   *   The index at which to store the first character.
+   * @throws IndexOutOfBoundsException
+   *   If a cell is invalid or has no entry in the table.
+   */
+  private static void translate(char[] table, byte[] cells, int srcOff, int len, char[] dst,
+      int dstOff) {
+    for (int i = 0; i < len; i++) {
+      int cell = cells[srcOff + i];
+      char c = ((cell < 0) || (cell >= table.length)) ? 0 : table[cell];
+      if (c == 0) {
+        count(i, 1);
+        throw new IndexOutOfBoundsException("No value found at path for cell " + (srcOff + i));
+      } // end of if loop
+      dst[dstOff + i] = c;
+    } // end of for loop
+    count(len, 0);
+  } // translate(char[], byte[], int, int, char[], int)
+
+  /**
+   * Convert ASCII text to packed Braille cells.
+   *
+   * @param text
+   *   The text to convert.
+   * @return
+   *   The cells, one per character.
+   * @throws IndexOutOfBoundsException
+   *   If a character has no Braille equivalent.
+   */
+  public static BrailleCells toCells(CharSequence text) {
+    byte[] cells = Holder.current.a2bCells;
+    int length = text.length();
+    long[] words = new long[BrailleCells.wordsFor(length)];
+    for (int i = 0; i < length; i++) {
+      char letter = text.charAt(i);
+      byte cell = (letter < cells.length) ? cells[letter] : -1;
+      if (cell < 0) {
+        count(i, 1);
+        throw new IndexOutOfBoundsException("No value found at path for character " + i);
+      } // end of if loop
+      words[i / BrailleCells.CELLS_PER_WORD] |=
+          (long) cell << (BrailleCells.CELL_SIZE * (i % BrailleCells.CELLS_PER_WORD));
+    } // end of for loop
+    count(length, 0);
+    return new BrailleCells(words, length);
+  } // toCells(CharSequence)
+
+  /**
+   * Convert packed Braille cells to ASCII text.
+   *
+   * @param cells
+   *   The cells to convert.
+   * @return
+   *   The text, one character per cell.
+   * @throws IndexOutOfBoundsException
+   *   If a cell has no ASCII equivalent.
+   */
+  public static String toAscii(BrailleCells cells) {
+    return new String(translate(Holder.current.b2aChars, cells));
+  } // toAscii(BrailleCells)
+
+  /**
+   * Convert packed Braille cells to Unicode Braille characters.
+   *
+   * @param cells
+   *   The cells to convert.
+   * @return
+   *   The Unicode characters, one per cell.
+   * @throws IndexOutOfBoundsException
+   *   If a cell has no Unicode equivalent.
+   */
+  public static String toUnicode(BrailleCells cells) {
+    return new String(translate(Holder.current.b2uChars, cells));
+  } // toUnicode(BrailleCells)
+
+  /**
+   * Translate packed cells through a compiled table, a word at a time.
+   *
+   * @param table
+   *   The character for each cell, or 0 for none.
+   * @param cells
+   *   The cells to convert.
+   * @return
+   *   The characters, one per cell.
+   * @throws IndexOutOfBoundsException
+   *   If a cell has no entry in the table.
+   */
+  private static char[] translate(char[] table, BrailleCells cells) {
+    char[] result = new char[cells.length()];
+    int i = 0;
+    for (int w = 0; w < cells.wordCount(); w++) {
+      long word = cells.word(w);
+      int end = Math.min(result.length, i + BrailleCells.CELLS_PER_WORD);
+      for (; i < end; i++) {
+        char c = table[(int) word & BrailleCells.CELL_MASK];
+        if (c == 0) {
+          count(i, 1);
+          throw new IndexOutOfBoundsException("No value found at path for cell " + i);
+        } // end of if loop
+        result[i] = c;
+        word >>>= BrailleCells.CELL_SIZE;
+      } // end of for loop
+    } // end of for loop
+    count(result.length, 0);
+    return result;
+  } // translate(char[], BrailleCells)
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * A complete, immutable set of translation tables. The trees are
+   * never modified once loaded, and the arrays are compiled from them
+   * before the tables are published, so a set of tables may be shared
+   * by any number of threads without locking.
+   */
+  private static final class Tables {
+    /**
+     * The tree for ASCII-to-Braille conversions.
+     */
+    final BitTree<String> a2bTree;
+
+    /**
+     * The tree for Braille-to-ASCII conversions.
+     */
+    final CharBitTree b2aTree;
+
+    /**
+     * The tree for Braille-to-Unicode conversions.
+     */
+    final CharBitTree b2uTree;
+
+    /**
+     * The Braille cell for each ASCII character, or -1 if the
+     * character has no cell. Compiled from <code>a2bTree</code>.
+     */
+    final byte[] a2bCells;
+
+    /**
+     * The ASCII character for each Braille cell, or 0 if the cell has
+     * no character. Compiled from <code>b2aTree</code>.
+     */
+    final char[] b2aChars;
+
+    /**
+     * The Unicode character for each Braille cell, or 0 if the cell
+     * has no character. Compiled from <code>b2uTree</code>.
+     */
+    final char[] b2uChars;
+
+    /**
+     * The time taken to load and compile the tables, in nanoseconds.
+     */
+    final long loadNanos;
+
+    /**
+     * Load the trees from CSV sources and compile them.
+     *
+     * @param a2bSource
+     *   Mappings from 8-bit ASCII codes to Braille cells.
+     * @param b2aSource
+     *   Mappings from Braille cells to ASCII characters.
+     * @param b2uSource
+     *   Mappings from Braille cells to hexadecimal Unicode code points.
+     * @throws IllegalArgumentException
+     *   If a source is malformed, or an ASCII code maps to anything but
+     *   a Braille cell.
+     */
+    Tables(InputStream a2bSource, InputStream b2aSource, InputStream b2uSource) {
+      long start = System.nanoTime();
+      this.a2bTree = BitTree.create(8);
+      load(this.a2bTree, a2bSource);
+      this.b2aTree = new CharBitTree(6);
+      load(this.b2aTree, b2aSource);
+      this.b2uTree = new CharBitTree(6, 16);
+      load(this.b2uTree, b2uSource);
+
+      this.a2bCells = new byte[1 << a2bTree.depth()];
+      for (int letter = 0; letter < a2bCells.length; letter++) {
+        String bits = a2bTree.getOrNull(letter);
+        if ((bits != null) && (bits.length() != BrailleCells.CELL_SIZE)) {
+          throw new IllegalArgumentException(badCell(letter, bits));
+        } // end of if loop
+        try {
+          a2bCells[letter] = (bits == null) ? -1 : (byte) toCell(bits, 0);
+        } catch (IndexOutOfBoundsException e) {
+          throw new IllegalArgumentException(badCell(letter, bits), e);
+        } // end of try/catch
+      } // end of for loop
+
+      this.b2aChars = new char[CELL_BITS.length];
+      this.b2uChars = new char[CELL_BITS.length];
+      for (int cell = 0; cell < CELL_BITS.length; cell++) {
+        b2aChars[cell] = b2aTree.getCharOrDefault(cell, (char) 0);
+        b2uChars[cell] = b2uTree.getCharOrDefault(cell, (char) 0);
+      } // end of for loop
+      this.loadNanos = System.nanoTime() - start;
+    } // Tables(InputStream, InputStream, InputStream)
+
+    /**
+     * Describe an ASCII-to-Braille mapping that is not a Braille cell.
+     *
+     * @param letter
+     *   The ASCII code.
+     * @param bits
+     *   The value it maps to.
+     * @return
+     *   The message.
+     */
+    private static String badCell(int letter, String bits) {
+      return "Invalid a2b mapping for " + letter + ": \"" + bits
+          + "\" is not six '0' and '1' characters";
+    } // badCell(int, String)
+
+    /**
+     * Load a tree from a stream and close the stream.
+     *
+     * @param tree
+     *   The tree to load.
+     * @param source
+     *   The mappings, in CSV format.
+     */
+    private static void load(BitTree<?> tree, InputStream source) {
+      tree.load(source);
       try {
-        stream.close();
+        source.close();
       } catch (IOException e) {
         // Ignore closing errors
       } // end of try/catch
-    } // end of if loop
-    String unicodeHex = b2uTree.get(bits);
-    int unicodeValue = Integer.parseInt(unicodeHex, 16);
-    return String.valueOf((char) unicodeValue);
-  } // toUnicode(String)
+    } // load(BitTree, InputStream)
+  } // class Tables
+
+  /**
+   * Holds the current tables. The JVM initializes this class, and so
+   * loads the default tables, exactly once, on the first conversion.
+   * The field is volatile so that <code>reload</code> publishes new
+   * tables safely; readers never lock.
+   */
+  private static final class Holder {
+    /**
+     * The tables used by conversions.
+     */
+    static volatile Tables current =
+        new Tables(new ByteArrayInputStream(a2b.getBytes()),
+            new ByteArrayInputStream(b2a.getBytes()),
+            new ByteArrayInputStream(b2u.getBytes()));
+  } // class Holder
 } // class BrailleAsciiTables
@@ -0,0 +1,251 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Immutable sequences of Braille cells, packed ten to a 64-bit word.
+ * Each cell is its bit string read as a binary number, so "100000" is
+ * 32, and cell i occupies bits 6 * (i % 10) through 6 * (i % 10) + 5
+ * of word i / 10. A sequence takes about 0.8 bytes per cell, where the
+ * equivalent bit strings take well over 12.
+ *
+ * @author Slok Rajbhandari
+ */
+public class BrailleCells {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of cells in each word.
+   */
+  public static final int CELLS_PER_WORD = 10;
+
+  /**
+   * The number of bits in each cell.
+   */
+  public static final int CELL_SIZE = 6;
+
+  /**
+   * The mask for a single cell.
+   */
+  static final int CELL_MASK = (1 << CELL_SIZE) - 1;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The packed cells. Unused bits of the last word are zero.
+   */
+  private final long[] words;
+
+  /**
+   * The number of cells.
+   */
+  private final int length;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a sequence from packed words. The words are not copied.
+   *
+   * @param packed
+   *   The packed cells.
+   * @param count
+   *   The number of cells.
+   */
+  BrailleCells(long[] packed, int count) {
+    this.words = packed;
+    this.length = count;
+  } // BrailleCells(long[], int)
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Determine how many words are needed to hold some cells.
+   *
+   * @param count
+   *   The number of cells.
+   * @return
+   *   The number of words.
+   */
+  static int wordsFor(int count) {
+    return (count + CELLS_PER_WORD - 1) / CELLS_PER_WORD;
+  } // wordsFor(int)
+
+  /**
+   * Pack a range of cells.
+   *
+   * @param cells
+   *   The cells, each between 0 and 63.
+   * @param off
+   *   The index of the first cell.
+   * @param len
+   *   The number of cells.
+   * @return
+   *   The packed cells.
+   * @throws IndexOutOfBoundsException
+   *   If the range is out of bounds or a cell is out of range.
+   */
+  public static BrailleCells of(byte[] cells, int off, int len) {
+    Objects.checkFromIndexSize(off, len, cells.length);
+    long[] words = new long[wordsFor(len)];
+    for (int i = 0; i < len; i++) {
+      int cell = cells[off + i];
+      if ((cell & ~CELL_MASK) != 0) {
+        throw new IndexOutOfBoundsException("Invalid cell " + cell + " at " + (off + i));
+      } // end of if loop
+      words[i / CELLS_PER_WORD] |= (long) cell << (CELL_SIZE * (i % CELLS_PER_WORD));
+    } // end of for loop
+    return new BrailleCells(words, len);
+  } // of(byte[], int, int)
+
+  /**
+   * Pack a Braille bit string, such as "100000110000".
+   *
+   * @param bits
+   *   The bit string, whose length must be a multiple of six.
+   * @return
+   *   The packed cells.
+   * @throws IndexOutOfBoundsException
+   *   If the string has the wrong length or contains characters other
+   *   than '0' and '1'.
+   */
+  public static BrailleCells fromBits(String bits) {
+    if (bits.length() % CELL_SIZE != 0) {
+      throw new IndexOutOfBoundsException("Incorrect number of bits passed");
+    } // end of if loop
+    int count = bits.length() / CELL_SIZE;
+    long[] words = new long[wordsFor(count)];
+    for (int i = 0; i < count; i++) {
+      long cell = BrailleAsciiTables.toCell(bits, i * CELL_SIZE);
+      words[i / CELLS_PER_WORD] |= cell << (CELL_SIZE * (i % CELLS_PER_WORD));
+    } // end of for loop
+    return new BrailleCells(words, count);
+  } // fromBits(String)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of cells.
+   *
+   * @return
+   *   The number of cells.
+   */
+  public int length() {
+    return length;
+  } // length()
+
+  /**
+   * Get one cell.
+   *
+   * @param index
+   *   The index of the cell.
+   * @return
+   *   The cell, between 0 and 63.
+   * @throws IndexOutOfBoundsException
+   *   If the index is out of bounds.
+   */
+  public int get(int index) {
+    Objects.checkIndex(index, length);
+    return (int) (words[index / CELLS_PER_WORD] >>> (CELL_SIZE * (index % CELLS_PER_WORD)))
+        & CELL_MASK;
+  } // get(int)
+
+  /**
+   * Get one word of packed cells.
+   *
+   * @param index
+   *   The index of the word, less than <code>wordCount()</code>.
+   * @return
+   *   The ten cells starting at cell <code>10 * index</code>, with any
+   *   cells past the end of the sequence as zero.
+   */
+  public long word(int index) {
+    return words[index];
+  } // word(int)
+
+  /**
+   * Get the number of packed words.
+   *
+   * @return
+   *   The number of words.
+   */
+  public int wordCount() {
+    return words.length;
+  } // wordCount()
+
+  /**
+   * Unpack the cells into an array, one cell per byte.
+   *
+   * @return
+   *   A new array of cells.
+   */
+  public byte[] toByteArray() {
+    byte[] cells = new byte[length];
+    for (int i = 0; i < length; i++) {
+      cells[i] = (byte) ((words[i / CELLS_PER_WORD] >>> (CELL_SIZE * (i % CELLS_PER_WORD)))
+          & CELL_MASK);
+    } // end of for loop
+    return cells;
+  } // toByteArray()
+
+  /**
+   * Convert the cells to a Braille bit string.
+   *
+   * @return
+   *   Six '0' and '1' characters per cell.
+   */
+  public String toBits() {
+    StringBuilder bits = new StringBuilder(length * CELL_SIZE);
+    for (int i = 0; i < length; i++) {
+      bits.append(BrailleAsciiTables.cellBits(get(i)));
+    } // end of for loop
+    return bits.toString();
+  } // toBits()
+
+  /**
+   * Convert the cells to a string.
+   *
+   * @return
+   *   The Braille bit string.
+   */
+  @Override
+  public String toString() {
+    return toBits();
+  } // toString()
+
+  /**
+   * Determine whether another object holds the same cells.
+   *
+   * @param other
+   *   The object to compare to.
+   * @return
+   *   True if the other object is a sequence of the same cells.
+   */
+  @Override
+  public boolean equals(Object other) {
+    return (other instanceof BrailleCells)
+        && (((BrailleCells) other).length == length)
+        && Arrays.equals(((BrailleCells) other).words, words);
+  } // equals(Object)
+
+  /**
+   * Compute a hash code consistent with <code>equals</code>.
+   *
+   * @return
+   *   The hash code.
+   */
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(words) * 31 + length;
+  } // hashCode()
+} // class BrailleCells
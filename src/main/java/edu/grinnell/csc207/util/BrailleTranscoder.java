@@ -0,0 +1,186 @@
+package edu.grinnell.csc207.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Streaming conversions between ASCII text, Braille bit strings, and
+ * Unicode Braille. Input is read and converted a buffer at a time, so
+ * documents of any size are converted in constant memory. Line
+ * terminators are copied through unchanged, which lets a converted
+ * file keep its line structure.
+ *
+ * @author Slok Rajbhandari
+ */
+public class BrailleTranscoder {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of characters read at a time.
+   */
+  static final int BUFFER_SIZE = 8192;
+
+  /**
+   * The number of bits in a Braille cell.
+   */
+  private static final int CELL_SIZE = 6;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Prevent instantiation of this utility class.
+   */
+  private BrailleTranscoder() {
+  } // BrailleTranscoder()
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Convert everything from a reader and write it to a writer. The
+   * writer is flushed, but neither stream is closed.
+   *
+   * @param source
+   *   The text to convert: ASCII for the BRAILLE and UNICODE targets,
+   *   Braille bit strings for the ASCII target.
+   * @param sink
+   *   Where to write the converted text.
+   * @param target
+   *   The form to convert to.
+   * @return
+   *   The number of characters read.
+   * @throws IOException
+   *   If reading or writing fails.
+   * @throws IndexOutOfBoundsException
+   *   If the input contains something that cannot be converted.
+   */
+  public static long transcode(Reader source, Writer sink, Target target)
+      throws IOException {
+    char[] input = new char[BUFFER_SIZE];
+    char[] output = new char[BUFFER_SIZE * CELL_SIZE];
+    long position = 0;
+    int cell = 0;
+    int cellBits = 0;
+    int count;
+    while ((count = source.read(input)) != -1) {
+      int length = 0;
+      for (int i = 0; i < count; i++, position++) {
+        char c = input[i];
+        if ((c == '\n') || (c == '\r')) {
+          if (cellBits != 0) {
+            throw new IndexOutOfBoundsException("Incomplete cell at character " + position);
+          } // end of if loop
+          output[length++] = c;
+        } else if (target == Target.BRAILLE) {
+          BrailleAsciiTables.cellBits(cellFor(c, position)).getChars(0, CELL_SIZE, output,
+              length);
+          length += CELL_SIZE;
+        } else if (target == Target.UNICODE) {
+          output[length++] = BrailleAsciiTables.unicodeFor(cellFor(c, position));
+        } else {
+          if ((c != '0') && (c != '1')) {
+            throw new IndexOutOfBoundsException("Invalid bit at character " + position);
+          } // end of if loop
+          cell = (cell << 1) | (c - '0');
+          if (++cellBits == CELL_SIZE) {
+            output[length++] = BrailleAsciiTables.asciiFor(cell);
+            cell = 0;
+            cellBits = 0;
+          } // end of if loop
+        } // end of if loop
+      } // end of for loop
+      sink.write(output, 0, length);
+    } // end of while loop
+    if (cellBits != 0) {
+      throw new IndexOutOfBoundsException("Incomplete cell at character " + position);
+    } // end of if loop
+    sink.flush();
+    return position;
+  } // transcode(Reader, Writer, Target)
+
+  /**
+   * Convert everything from one channel and write it to another,
+   * decoding and encoding characters with the given charset. Neither
+   * channel is closed.
+   *
+   * @param source
+   *   The channel containing the text to convert.
+   * @param sink
+   *   The channel to which the converted text is written.
+   * @param target
+   *   The form to convert to.
+   * @param charset
+   *   The character set of both channels.
+   * @return
+   *   The number of characters read.
+   * @throws IOException
+   *   If reading or writing fails.
+   * @throws IndexOutOfBoundsException
+   *   If the input contains something that cannot be converted.
+   */
+  public static long transcode(ReadableByteChannel source, WritableByteChannel sink,
+      Target target, Charset charset) throws IOException {
+    Reader reader = Channels.newReader(source, charset.newDecoder(), BUFFER_SIZE);
+    Writer writer = Channels.newWriter(sink, charset.newEncoder(), BUFFER_SIZE);
+    return transcode(reader, writer, target);
+  } // transcode(ReadableByteChannel, WritableByteChannel, Target, Charset)
+
+  // +---------------+-----------------------------------------------
+  // | Local helpers |
+  // +---------------+
+
+  /**
+   * Find the Braille cell for a character in the input.
+   *
+   * @param letter
+   *   The character.
+   * @param position
+   *   The position of the character in the input.
+   * @return
+   *   The cell.
+   * @throws IndexOutOfBoundsException
+   *   If the character has no Braille equivalent.
+   */
+  private static int cellFor(char letter, long position) {
+    int cell = BrailleAsciiTables.cellForOrDefault(letter, -1);
+    if (cell < 0) {
+      throw new IndexOutOfBoundsException("Cannot convert '" + letter + "' at character "
+          + position);
+    } // end of if loop
+    return cell;
+  } // cellFor(char, long)
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * The forms text may be converted to.
+   */
+  public enum Target {
+    /**
+     * Braille bit strings, such as "100000" for 'a'.
+     */
+    BRAILLE,
+
+    /**
+     * ASCII text.
+     */
+    ASCII,
+
+    /**
+     * Characters from the Unicode Braille Patterns block.
+     */
+    UNICODE
+  } // enum Target
+} // class BrailleTranscoder
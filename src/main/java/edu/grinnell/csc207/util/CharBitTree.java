@@ -0,0 +1,300 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Arrays;
+
+/**
+ * Dense bit trees whose values are chars. Values are kept unboxed in a
+ * flat array indexed by key, and <code>getChar</code> returns them
+ * without boxing or parsing.
+ *
+ * @author Slok Rajbhandari
+ */
+public class CharBitTree extends BitTree<Character> {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The values, indexed by key.
+   */
+  private final char[] values;
+
+  /**
+   * One bit per key, set when the key has a value.
+   */
+  private final long[] present;
+
+  /**
+   * The number of keys with values.
+   */
+  private int size;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a tree with the given depth whose values are written as
+   * the characters themselves.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and
+   *   <code>DenseBitTree.MAX_DEPTH</code>.
+   */
+  public CharBitTree(int n) {
+    this(n, BitTreeCodec.characters());
+  } // CharBitTree(int)
+
+  /**
+   * Create a tree with the given depth whose values are written as
+   * numeric code points in the given radix, such as "2801".
+   *
+   * @param n
+   *   The depth of the tree, between 1 and
+   *   <code>DenseBitTree.MAX_DEPTH</code>.
+   * @param radix
+   *   The radix used when loading and dumping values.
+   */
+  public CharBitTree(int n, int radix) {
+    this(n, BitTreeCodec.codePoints(radix));
+  } // CharBitTree(int, int)
+
+  /**
+   * Create a tree with the given depth and codec.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and
+   *   <code>DenseBitTree.MAX_DEPTH</code>.
+   * @param valueCodec
+   *   Converts values to and from text.
+   * @throws IllegalArgumentException
+   *   If the depth is out of range.
+   */
+  public CharBitTree(int n, BitTreeCodec<Character> valueCodec) {
+    super(n, valueCodec);
+    if (n > DenseBitTree.MAX_DEPTH) {
+      throw new IllegalArgumentException("Dense trees are limited to depth "
+          + DenseBitTree.MAX_DEPTH);
+    } // end of if loop
+    this.values = new char[1 << n];
+    this.present = new long[Math.max(1, (1 << n) / Long.SIZE)];
+    this.size = 0;
+  } // CharBitTree(int, BitTreeCodec)
+
+  // +---------------+-----------------------------------------------
+  // | Local helpers |
+  // +---------------+
+
+  /**
+   * Determine whether a bit pattern has a value, using only the
+   * presence bitmap, without counting the lookup.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   True if the pattern has a value; false otherwise.
+   */
+  private boolean has(long bits) {
+    return isValidBits(bits) && ((present[(int) bits >>> 6] & (1L << bits)) != 0);
+  } // has(long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Add a mapping from a bit pattern to a char.
+   *
+   * @param bits
+   *   The bit pattern (must fit in the depth of the tree).
+   * @param value
+   *   The value to store at the bit pattern.
+   * @throws IndexOutOfBoundsException
+   *   If the bit pattern has bits set above the depth of the tree.
+   */
+  public void setChar(long bits, char value) {
+    if (!isValidBits(bits)) {
+      throw new IndexOutOfBoundsException("Invalid bit sequence");
+    } // end of if loop
+    int index = (int) bits;
+    values[index] = value;
+    if ((present[index >>> 6] & (1L << index)) == 0) {
+      present[index >>> 6] |= 1L << index;
+      size++;
+    } // end of if loop
+  } // setChar(long, char)
+
+  /**
+   * Retrieve the char associated with a bit pattern.
+   *
+   * @param bits
+   *   The bit pattern (must fit in the depth of the tree).
+   * @return
+   *   The value associated with the bit pattern.
+   * @throws IndexOutOfBoundsException
+   *   If the bit pattern is invalid or not found.
+   */
+  public char getChar(long bits) {
+    if (!counted(has(bits))) {
+      throw new IndexOutOfBoundsException(isValidBits(bits) ? "No value found at path"
+          : "Invalid bit sequence");
+    } // end of if loop
+    return values[(int) bits];
+  } // getChar(long)
+
+  /**
+   * Retrieve the char associated with a bit pattern, or a default if
+   * there is none. Never throws or boxes.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @param defaultValue
+   *   The value to return if the pattern has no value.
+   * @return
+   *   The value, or <code>defaultValue</code>.
+   */
+  public char getCharOrDefault(long bits, char defaultValue) {
+    return counted(has(bits)) ? values[(int) bits] : defaultValue;
+  } // getCharOrDefault(long, char)
+
+  /**
+   * Add a mapping from a bit pattern to a value. A null value
+   * removes any existing mapping.
+   *
+   * @param bits
+   *   The bit pattern (must fit in the depth of the tree).
+   * @param value
+   *   The value to store at the bit pattern.
+   * @throws IndexOutOfBoundsException
+   *   If the bit pattern has bits set above the depth of the tree.
+   */
+  @Override
+  public void set(long bits, Character value) {
+    if (value != null) {
+      setChar(bits, value);
+    } else if (isValidBits(bits)) {
+      remove(bits);
+    } else {
+      throw new IndexOutOfBoundsException("Invalid bit sequence");
+    } // end of if loop
+  } // set(long, Character)
+
+  /**
+   * Remove the mapping for a bit pattern by clearing its presence bit.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value that was removed, or null if there was none.
+   */
+  @Override
+  public Character remove(long bits) {
+    if (!has(bits)) {
+      return null;
+    } // end of if loop
+    present[(int) bits >>> 6] &= ~(1L << bits);
+    size--;
+    return values[(int) bits];
+  } // remove(long)
+
+  /**
+   * Remove every mapping and prefix value from the tree.
+   */
+  @Override
+  public void clear() {
+    Arrays.fill(present, 0);
+    size = 0;
+    super.clear();
+  } // clear()
+
+  /**
+   * Get the number of mappings in the tree.
+   *
+   * @return
+   *   The number of keys with values.
+   */
+  @Override
+  public long size() {
+    return size;
+  } // size()
+
+  /**
+   * Retrieve the value associated with a bit pattern.
+   *
+   * @param bits
+   *   The bit pattern (must fit in the depth of the tree).
+   * @return
+   *   The value associated with the bit pattern.
+   * @throws IndexOutOfBoundsException
+   *   If the bit pattern is invalid or not found.
+   */
+  @Override
+  public Character get(long bits) {
+    return getChar(bits);
+  } // get(long)
+
+  /**
+   * Retrieve the value associated with a bit pattern, or null if there
+   * is none.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value, or null if the pattern has no value or does not fit
+   *   in the depth of the tree.
+   */
+  @Override
+  public Character getOrNull(long bits) {
+    return has(bits) ? values[(int) bits] : null;
+  } // getOrNull(long)
+
+  /**
+   * Determine whether a bit pattern has a value, using only the
+   * presence bitmap. Never throws.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   True if the pattern has a value; false otherwise.
+   */
+  @Override
+  public boolean contains(long bits) {
+    return counted(has(bits));
+  } // contains(long)
+
+  /**
+   * Visit the mappings whose keys fall in a range, in key order.
+   *
+   * @param visitor
+   *   The visitor, which may stop the scan by returning false.
+   * @param lo
+   *   The smallest key in the range.
+   * @param hi
+   *   The largest key in the range.
+   * @return
+   *   False if the visitor stopped the scan; true otherwise.
+   */
+  @Override
+  boolean scan(Visitor<? super Character> visitor, long lo, long hi) {
+    for (int i = (int) lo; i <= (int) hi; i++) {
+      if (((present[i >>> 6] & (1L << i)) != 0) && !visitor.visit(values[i], i)) {
+        return false;
+      } // end of if loop
+    } // end of for loop
+    return true;
+  } // scan(Visitor, long, long)
+
+  /**
+   * Estimate the memory used by the structure of the tree, not
+   * counting the values themselves. The tree has no nodes, only an
+   * array with a slot for every key and a bitmap of the keys present.
+   *
+   * @return
+   *   The estimate, in bytes.
+   */
+  @Override
+  public long memoryEstimate() {
+    return super.memoryEstimate() + 32 + (long) Character.BYTES * values.length
+        + (long) Long.BYTES * present.length;
+  } // memoryEstimate()
+} // class CharBitTree
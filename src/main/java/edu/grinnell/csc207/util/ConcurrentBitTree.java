@@ -0,0 +1,522 @@
+package edu.grinnell.csc207.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bit trees that may be shared by any number of reading and writing
+ * threads. Readers never lock: they follow children and read values
+ * with acquire semantics. Writers install missing children with
+ * compare-and-set, so two writers racing to create the same node agree
+ * on a single winner, and publish values with release semantics, so a
+ * reader that sees a value also sees everything written before it.
+ *
+ * <p>Lookups and <code>dump</code> are weakly consistent: they reflect
+ * every <code>set</code> that completed before they began, and may or
+ * may not reflect ones that run concurrently.</p>
+ *
+ * <p><code>remove</code> clears the value but leaves the nodes on its
+ * path in place, since another thread may be descending through them
+ * to add a mapping; unlinking them could lose that mapping. The nodes
+ * are reused if the key, or one near it, is set again.</p>
+ *
+ * @param <V>
+ *   The type of values stored in the tree.
+ *
+ * @author Slok Rajbhandari
+ */
+public class ConcurrentBitTree<V> extends BitTree<V> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Access to the left children of nodes.
+   */
+  private static final VarHandle LEFT;
+
+  /**
+   * Access to the right children of nodes.
+   */
+  private static final VarHandle RIGHT;
+
+  /**
+   * Access to the values of nodes.
+   */
+  private static final VarHandle VALUE;
+
+  /**
+   * The estimated bytes used by a node, with compressed references.
+   */
+  static final long NODE_BYTES = 24;
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      LEFT = lookup.findVarHandle(Node.class, "left", Node.class);
+      RIGHT = lookup.findVarHandle(Node.class, "right", Node.class);
+      VALUE = lookup.findVarHandle(Node.class, "value", Object.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    } // end of try/catch
+  } // static
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The root of the tree, which always exists.
+   */
+  private final Node<V> root;
+
+  /**
+   * The number of mappings, kept without contention between writers.
+   */
+  private final LongAdder size;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a concurrent tree of strings with the given depth.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and 64.
+   */
+  @SuppressWarnings("unchecked")
+  public ConcurrentBitTree(int n) {
+    this(n, (BitTreeCodec<V>) BitTreeCodec.strings());
+  } // ConcurrentBitTree(int)
+
+  /**
+   * Create a concurrent tree with the given depth and codec.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and 64.
+   * @param valueCodec
+   *   Converts values to and from text.
+   */
+  public ConcurrentBitTree(int n, BitTreeCodec<V> valueCodec) {
+    super(n, valueCodec);
+    this.root = new Node<>();
+    this.size = new LongAdder();
+  } // ConcurrentBitTree(int, BitTreeCodec)
+
+  // +---------------+-----------------------------------------------
+  // | Local helpers |
+  // +---------------+
+
+  /**
+   * Get the handle for the child on one side of a node.
+   *
+   * @param bit
+   *   0 for the left child, 1 for the right.
+   * @return
+   *   The handle.
+   */
+  private static VarHandle side(long bit) {
+    return (bit == 0) ? LEFT : RIGHT;
+  } // side(long)
+
+  /**
+   * Read a child of a node with acquire semantics.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param node
+   *   The node.
+   * @param bit
+   *   0 for the left child, 1 for the right.
+   * @return
+   *   The child, or null if there is none.
+   */
+  @SuppressWarnings("unchecked")
+  private static <V> Node<V> child(Node<V> node, long bit) {
+    return (Node<V>) side(bit).getAcquire(node);
+  } // child(Node, long)
+
+  /**
+   * Find or create the node at the end of a path, installing missing
+   * nodes with compare-and-set.
+   *
+   * @param bits
+   *   The path, in the low <code>length</code> bits.
+   * @param length
+   *   The number of bits in the path.
+   * @return
+   *   The node at the end of the path.
+   */
+  @SuppressWarnings("unchecked")
+  private Node<V> createPath(long bits, int length) {
+    Node<V> current = root;
+    for (int shift = length - 1; shift >= 0; shift--) {
+      long bit = (bits >>> shift) & 1;
+      Node<V> next = child(current, bit);
+      if (next == null) {
+        Node<V> created = new Node<>();
+        next = (Node<V>) side(bit).compareAndExchange(current, null, created);
+        if (next == null) {
+          next = created;
+        } // end of if loop
+      } // end of if loop
+      current = next;
+    } // end of for loop
+    return current;
+  } // createPath(long, int)
+
+  /**
+   * Recursively visit the mappings in a range below a node.
+   *
+   * @param visitor
+   *   The visitor.
+   * @param node
+   *   The current node.
+   * @param prefix
+   *   The bits on the path to the node.
+   * @param remaining
+   *   The number of bits below the node.
+   * @param lo
+   *   The smallest key in the range.
+   * @param hi
+   *   The largest key in the range.
+   * @return
+   *   False if the visitor stopped the scan; true otherwise.
+   */
+  @SuppressWarnings("unchecked")
+  private boolean scanHelper(Visitor<? super V> visitor, Node<V> node, long prefix,
+      int remaining, long lo, long hi) {
+    if ((node == null) || !overlaps(prefix << remaining, remaining, lo, hi)) {
+      return true;
+    } // end of if loop
+    if (remaining == 0) {
+      V value = (V) VALUE.getAcquire(node);
+      return (value == null) || visitor.visit(value, prefix);
+    } // end of if loop
+    return scanHelper(visitor, child(node, 0), prefix << 1, remaining - 1, lo, hi)
+        && scanHelper(visitor, child(node, 1), (prefix << 1) | 1, remaining - 1, lo, hi);
+  } // scanHelper(Visitor, Node, long, int, long, long)
+
+  /**
+   * Recursively visit the prefix values at and below a node.
+   *
+   * @param visitor
+   *   The visitor.
+   * @param node
+   *   The current node, or null.
+   * @param prefix
+   *   The bits on the path to the node.
+   * @param level
+   *   The number of bits on the path to the node.
+   */
+  @SuppressWarnings("unchecked")
+  private void prefixHelper(PrefixVisitor<? super V> visitor, Node<V> node, long prefix,
+      int level) {
+    if ((node == null) || (level == depth())) {
+      return;
+    } // end of if loop
+    V value = (V) VALUE.getAcquire(node);
+    if (value != null) {
+      visitor.visit(value, prefix, level);
+    } // end of if loop
+    prefixHelper(visitor, child(node, 0), prefix << 1, level + 1);
+    prefixHelper(visitor, child(node, 1), (prefix << 1) | 1, level + 1);
+  } // prefixHelper(PrefixVisitor, Node, long, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Add a mapping from a bit pattern to a value. Safe to call from
+   * any thread.
+   *
+   * @param bits
+   *   The bit pattern (must fit in the depth of the tree).
+   * @param value
+   *   The value to store at the bit pattern, or null to remove the
+   *   mapping.
+   * @throws IndexOutOfBoundsException
+   *   If the bit pattern has bits set above the depth of the tree.
+   */
+  @Override
+  public void set(long bits, V value) {
+    if (!isValidBits(bits)) {
+      throw new IndexOutOfBoundsException("Invalid bit sequence");
+    } // end of if loop
+    if (value == null) {
+      remove(bits);
+      return;
+    } // end of if loop
+    if (VALUE.getAndSetRelease(createPath(bits, depth()), value) == null) {
+      size.increment();
+    } // end of if loop
+  } // set(long, V)
+
+  /**
+   * Remove the mapping for a bit pattern by clearing its value. Safe
+   * to call from any thread. The nodes on the path are not unlinked.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value that was removed, or null if there was none.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public V remove(long bits) {
+    if (!isValidBits(bits)) {
+      return null;
+    } // end of if loop
+    Node<V> current = root;
+    for (int shift = depth() - 1; (shift >= 0) && (current != null); shift--) {
+      current = child(current, (bits >>> shift) & 1);
+    } // end of for loop
+    if (current == null) {
+      return null;
+    } // end of if loop
+    V removed = (V) VALUE.getAndSetRelease(current, null);
+    if (removed != null) {
+      size.decrement();
+    } // end of if loop
+    return removed;
+  } // remove(long)
+
+  /**
+   * Remove every mapping and prefix value from the tree. Readers may
+   * run concurrently, but writers should not: a <code>set</code> that
+   * overlaps the clear may be lost while still being counted by
+   * <code>size</code>.
+   */
+  @Override
+  public void clear() {
+    LEFT.setRelease(root, null);
+    RIGHT.setRelease(root, null);
+    VALUE.setRelease(root, null);
+    size.reset();
+    super.clear();
+  } // clear()
+
+  /**
+   * Get the number of mappings in the tree. Safe to call from any
+   * thread; while writers are active the count is approximate.
+   *
+   * @return
+   *   The number of keys with values.
+   */
+  @Override
+  public long size() {
+    return size.sum();
+  } // size()
+
+  /**
+   * Associate a value with every key that starts with a prefix. Safe
+   * to call from any thread.
+   *
+   * @param bits
+   *   The prefix, in the low <code>length</code> bits.
+   * @param length
+   *   The number of bits in the prefix, between 0 and the depth.
+   * @param value
+   *   The value for the prefix, or null to clear it.
+   * @throws IndexOutOfBoundsException
+   *   If the length is out of range or the prefix does not fit in it.
+   */
+  @Override
+  public void setPrefix(long bits, int length, V value) {
+    checkPrefix(bits, length);
+    if (length == depth()) {
+      set(bits, value);
+      return;
+    } // end of if loop
+    if (value != null) {
+      VALUE.setRelease(createPath(bits, length), value);
+      return;
+    } // end of if loop
+    // Clearing a prefix adds no nodes, though, like remove, it unlinks none.
+    Node<V> node = root;
+    for (int shift = length - 1; (shift >= 0) && (node != null); shift--) {
+      node = child(node, (bits >>> shift) & 1);
+    } // end of for loop
+    if (node != null) {
+      VALUE.setRelease(node, null);
+    } // end of if loop
+  } // setPrefix(long, int, V)
+
+  /**
+   * Retrieve the value associated with a bit pattern, or null if there
+   * is none. Safe to call from any thread, and never blocks.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value, or null if the pattern has no value or does not fit
+   *   in the depth of the tree.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public V getOrNull(long bits) {
+    if (!isValidBits(bits)) {
+      return null;
+    } // end of if loop
+    Node<V> current = root;
+    for (int shift = depth() - 1; (shift >= 0) && (current != null); shift--) {
+      current = child(current, (bits >>> shift) & 1);
+    } // end of for loop
+    return (current == null) ? null : (V) VALUE.getAcquire(current);
+  } // getOrNull(long)
+
+  /**
+   * Find the value for the longest prefix of a key that has one. Safe
+   * to call from any thread, and never blocks.
+   *
+   * @param key
+   *   The key, in the low <code>length</code> bits.
+   * @param length
+   *   The number of bits in the key, between 0 and the depth.
+   * @return
+   *   The value for the longest prefix that has one, or null if none
+   *   does.
+   * @throws IndexOutOfBoundsException
+   *   If the length is out of range or the key does not fit in it.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public V longestPrefixMatch(long key, int length) {
+    checkPrefix(key, length);
+    V best = null;
+    Node<V> current = root;
+    for (int shift = length - 1; current != null; shift--) {
+      V value = (V) VALUE.getAcquire(current);
+      if (value != null) {
+        best = value;
+      } // end of if loop
+      current = (shift < 0) ? null : child(current, (key >>> shift) & 1);
+    } // end of for loop
+    return best;
+  } // longestPrefixMatch(long, int)
+
+  /**
+   * Visit the mappings whose keys fall in a range, in key order.
+   *
+   * @param visitor
+   *   The visitor, which may stop the scan by returning false.
+   * @param lo
+   *   The smallest key in the range.
+   * @param hi
+   *   The largest key in the range.
+   * @return
+   *   False if the visitor stopped the scan; true otherwise.
+   */
+  @Override
+  boolean scan(Visitor<? super V> visitor, long lo, long hi) {
+    return scanHelper(visitor, root, 0, depth(), lo, hi);
+  } // scan(Visitor, long, long)
+
+  /**
+   * Visit the values of the prefixes shorter than the depth, in
+   * preorder. Prefixes set by other threads while visiting may or may
+   * not be seen.
+   *
+   * @param visitor
+   *   The visitor.
+   */
+  @Override
+  void scanPrefixes(PrefixVisitor<? super V> visitor) {
+    prefixHelper(visitor, root, 0, 0);
+  } // scanPrefixes(PrefixVisitor)
+
+  /**
+   * Count the nodes in the tree. Nodes added by other threads while
+   * counting may or may not be seen. Last-level nodes are counted only
+   * as leaves of mappings, since removal empties them without
+   * unlinking them.
+   *
+   * @return
+   *   The number of interior nodes and leaves. The root, which always
+   *   exists, is counted only if it has a child or a prefix value, as
+   *   an empty linked tree has no root.
+   */
+  @Override
+  public long nodeCount() {
+    boolean bare = (child(root, 0) == null) && (child(root, 1) == null)
+        && (VALUE.getAcquire(root) == null);
+    return super.nodeCount() + countInterior(root, 0) - (bare ? 1 : 0);
+  } // nodeCount()
+
+  /**
+   * Estimate the memory used by the structure of the tree, not
+   * counting the values themselves. Nodes added by other threads while
+   * counting may or may not be seen.
+   *
+   * @return
+   *   The estimate, in bytes.
+   */
+  @Override
+  public long memoryEstimate() {
+    return countNodes(root) * NODE_BYTES;
+  } // memoryEstimate()
+
+  /**
+   * Count the nodes below and including one node.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param node
+   *   The node, or null.
+   * @return
+   *   The number of nodes.
+   */
+  private static <V> long countNodes(Node<V> node) {
+    return (node == null) ? 0 : 1 + countNodes(child(node, 0)) + countNodes(child(node, 1));
+  } // countNodes(Node)
+
+  /**
+   * Count the interior nodes below and including one node.
+   *
+   * @param node
+   *   The node, or null.
+   * @param level
+   *   The number of bits on the path to the node.
+   * @return
+   *   The number of interior nodes.
+   */
+  private long countInterior(Node<V> node, int level) {
+    if ((node == null) || (level == depth())) {
+      return 0;
+    } // end of if loop
+    return 1 + countInterior(child(node, 0), level + 1)
+        + countInterior(child(node, 1), level + 1);
+  } // countInterior(Node, int)
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * Nodes of a concurrent tree. Nodes at the last level hold values;
+   * the others hold children and, optionally, prefix values. All
+   * fields are accessed through the tree's variable handles.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   */
+  private static class Node<V> {
+    /**
+     * The child for bit 0.
+     */
+    Node<V> left;
+
+    /**
+     * The child for bit 1.
+     */
+    Node<V> right;
+
+    /**
+     * The value for the key or prefix that leads to this node.
+     */
+    Object value;
+  } // class Node
+} // class ConcurrentBitTree
@@ -0,0 +1,193 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Arrays;
+
+/**
+ * Bit trees that store their values in a flat array with one slot per
+ * possible key. Lookups index the array directly, so they take constant
+ * time and never chase pointers. Intended for shallow trees, where the
+ * <code>2^depth</code> slots cost less than the nodes of a linked tree.
+ *
+ * @param <V>
+ *   The type of values stored in the tree.
+ *
+ * @author Slok Rajbhandari
+ */
+public class DenseBitTree<V> extends BitTree<V> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The deepest tree we are willing to store densely.
+   */
+  public static final int MAX_DEPTH = 24;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The values, indexed by key. Missing keys have null values.
+   */
+  private final V[] values;
+
+  /**
+   * The number of non-null slots.
+   */
+  private int size;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a dense tree of strings with the given depth.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and <code>MAX_DEPTH</code>.
+   * @throws IllegalArgumentException
+   *   If the depth is out of range.
+   */
+  @SuppressWarnings("unchecked")
+  public DenseBitTree(int n) {
+    this(n, (BitTreeCodec<V>) BitTreeCodec.strings());
+  } // DenseBitTree(int)
+
+  /**
+   * Create a dense tree with the given depth and codec.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and <code>MAX_DEPTH</code>.
+   * @param valueCodec
+   *   Converts values to and from text.
+   * @throws IllegalArgumentException
+   *   If the depth is out of range.
+   */
+  @SuppressWarnings("unchecked")
+  public DenseBitTree(int n, BitTreeCodec<V> valueCodec) {
+    super(n, valueCodec);
+    if (n > MAX_DEPTH) {
+      throw new IllegalArgumentException("Dense trees are limited to depth " + MAX_DEPTH);
+    } // end of if loop
+    this.values = (V[]) new Object[1 << n];
+    this.size = 0;
+  } // DenseBitTree(int, BitTreeCodec)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Add a mapping from a bit pattern to a value.
+   *
+   * @param bits
+   *   The bit pattern (must fit in the depth of the tree).
+   * @param value
+   *   The value to store at the bit pattern, or null to remove the
+   *   mapping.
+   * @throws IndexOutOfBoundsException
+   *   If the bit pattern has bits set above the depth of the tree.
+   */
+  @Override
+  public void set(long bits, V value) {
+    if (!isValidBits(bits)) {
+      throw new IndexOutOfBoundsException("Invalid bit sequence");
+    } // end of if loop
+    if (values[(int) bits] == null) {
+      size += (value == null) ? 0 : 1;
+    } else if (value == null) {
+      size--;
+    } // end of if loop
+    values[(int) bits] = value;
+  } // set(long, V)
+
+  /**
+   * Remove the mapping for a bit pattern.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value that was removed, or null if there was none.
+   */
+  @Override
+  public V remove(long bits) {
+    V removed = getOrNull(bits);
+    if (removed != null) {
+      values[(int) bits] = null;
+      size--;
+    } // end of if loop
+    return removed;
+  } // remove(long)
+
+  /**
+   * Remove every mapping and prefix value from the tree.
+   */
+  @Override
+  public void clear() {
+    Arrays.fill(values, null);
+    size = 0;
+    super.clear();
+  } // clear()
+
+  /**
+   * Get the number of mappings in the tree.
+   *
+   * @return
+   *   The number of non-null slots.
+   */
+  @Override
+  public long size() {
+    return size;
+  } // size()
+
+  /**
+   * Retrieve the value associated with a bit pattern, or null if there
+   * is none.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value, or null if the pattern has no value or does not fit
+   *   in the depth of the tree.
+   */
+  @Override
+  public V getOrNull(long bits) {
+    return isValidBits(bits) ? values[(int) bits] : null;
+  } // getOrNull(long)
+
+  /**
+   * Visit the mappings whose keys fall in a range, in key order.
+   *
+   * @param visitor
+   *   The visitor, which may stop the scan by returning false.
+   * @param lo
+   *   The smallest key in the range.
+   * @param hi
+   *   The largest key in the range.
+   * @return
+   *   False if the visitor stopped the scan; true otherwise.
+   */
+  @Override
+  boolean scan(Visitor<? super V> visitor, long lo, long hi) {
+    for (int i = (int) lo; i <= (int) hi; i++) {
+      if ((values[i] != null) && !visitor.visit(values[i], i)) {
+        return false;
+      } // end of if loop
+    } // end of for loop
+    return true;
+  } // scan(Visitor, long, long)
+
+  /**
+   * Estimate the memory used by the structure of the tree, not
+   * counting the values themselves. The tree has no nodes, only an
+   * array with a slot for every key.
+   *
+   * @return
+   *   The estimate, in bytes.
+   */
+  @Override
+  public long memoryEstimate() {
+    return super.memoryEstimate() + 16 + (long) Integer.BYTES * values.length;
+  } // memoryEstimate()
+} // class DenseBitTree
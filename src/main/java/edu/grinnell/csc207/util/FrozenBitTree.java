@@ -0,0 +1,719 @@
+package edu.grinnell.csc207.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable bit trees. Every field of every node is final, so a frozen
+ * tree may be shared by any number of threads without synchronization.
+ * Instead of changing a frozen tree, <code>withSet</code> and
+ * <code>withRemoved</code> build a new version that copies only the
+ * nodes on the path to the changed key and shares the rest with the
+ * original. Readers of the original are unaffected, and publishing the
+ * new version through a single volatile field or
+ * <code>AtomicReference</code> swaps tables atomically.
+ *
+ * <p>Because nodes never change, identical subtrees may also be shared
+ * within a tree. <code>compact</code> merges them, turning the tree
+ * into a directed acyclic graph with one node per distinct subtree.
+ * Lookups, scans, and path-copying updates work unchanged on the
+ * result.</p>
+ *
+ * <p>Prefix values of the tree a frozen tree was copied from are kept
+ * in the interior nodes, so <code>longestPrefixMatch</code> gives the
+ * same answers, and <code>withSet</code>, <code>withRemoved</code>, and
+ * <code>compact</code> carry them into the versions they build.</p>
+ *
+ * @param <V>
+ *   The type of values stored in the tree.
+ *
+ * @author Slok Rajbhandari
+ */
+public class FrozenBitTree<V> extends BitTree<V> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The estimated bytes used by a node, with compressed references.
+   */
+  static final long NODE_BYTES = 24;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The root of the tree, or null if the tree is empty.
+   */
+  private final Node<V> root;
+
+  /**
+   * The number of mappings.
+   */
+  private final long size;
+
+  /**
+   * The number of nodes that <code>compact</code> merged away when it
+   * built this tree, or 0 if this tree was not built by it.
+   */
+  private final long eliminated;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a frozen tree with the given root.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and 64.
+   * @param valueCodec
+   *   Converts values to and from text.
+   * @param top
+   *   The root of the tree.
+   * @param count
+   *   The number of leaves below the root.
+   */
+  private FrozenBitTree(int n, BitTreeCodec<V> valueCodec, Node<V> top, long count) {
+    this(n, valueCodec, top, count, 0);
+  } // FrozenBitTree(int, BitTreeCodec, Node, long)
+
+  /**
+   * Create a frozen tree with the given root that was built by
+   * <code>compact</code>.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and 64.
+   * @param valueCodec
+   *   Converts values to and from text.
+   * @param top
+   *   The root of the tree.
+   * @param count
+   *   The number of leaves below the root.
+   * @param merged
+   *   The number of nodes merged away.
+   */
+  private FrozenBitTree(int n, BitTreeCodec<V> valueCodec, Node<V> top, long count,
+      long merged) {
+    super(n, valueCodec);
+    this.root = top;
+    this.size = count;
+    this.eliminated = merged;
+  } // FrozenBitTree(int, BitTreeCodec, Node, long, long)
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Create a frozen copy of a tree.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param tree
+   *   The tree to copy.
+   * @return
+   *   A frozen tree with the same depth, codec, mappings, and prefix
+   *   values.
+   */
+  static <V> FrozenBitTree<V> of(BitTree<V> tree) {
+    List<V> values = new ArrayList<>();
+    long[][] keys = {new long[16]};
+    tree.forEach((value, bits) -> {
+      if (values.size() == keys[0].length) {
+        keys[0] = Arrays.copyOf(keys[0], keys[0].length * 2);
+      } // end of if loop
+      keys[0][values.size()] = bits;
+      values.add(value);
+    });
+    Node<V> top = build(keys[0], values, 0, values.size(), tree.depth());
+    List<V> prefixValues = new ArrayList<>();
+    List<long[]> prefixes = new ArrayList<>();
+    tree.scanPrefixes((value, bits, length) -> {
+      prefixValues.add(value);
+      prefixes.add(new long[] {bits, length});
+    });
+    for (int i = 0; i < prefixes.size(); i++) {
+      top = withPrefix(top, prefixes.get(i)[0], (int) prefixes.get(i)[1], prefixValues.get(i));
+    } // end of for loop
+    return new FrozenBitTree<>(tree.depth(), tree.codec(), top, values.size());
+  } // of(BitTree)
+
+  /**
+   * Build the subtree holding a range of mappings, all of which share
+   * the bits above <code>remaining</code>.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param keys
+   *   The keys, in ascending order.
+   * @param values
+   *   The values, in the same order.
+   * @param lo
+   *   The index of the first mapping in the range.
+   * @param hi
+   *   The index just past the last mapping in the range.
+   * @param remaining
+   *   The number of bits below the subtree's root.
+   * @return
+   *   The root of the subtree, or null if the range is empty.
+   */
+  private static <V> Node<V> build(long[] keys, List<V> values, int lo, int hi,
+      int remaining) {
+    if (lo == hi) {
+      return null;
+    } // end of if loop
+    if (remaining == 0) {
+      return new Node<>(null, null, values.get(lo));
+    } // end of if loop
+    long bit = 1L << (remaining - 1);
+    int mid = lo;
+    while ((mid < hi) && ((keys[mid] & bit) == 0)) {
+      mid++;
+    } // end of while loop
+    return new Node<>(build(keys, values, lo, mid, remaining - 1),
+        build(keys, values, mid, hi, remaining - 1), null);
+  } // build(long[], List, int, int, int)
+
+  /**
+   * Build a copy of a subtree with the value of one prefix changed.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param node
+   *   The root of the subtree, which may be null.
+   * @param bits
+   *   The prefix below the subtree's root, in the low
+   *   <code>length</code> bits.
+   * @param length
+   *   The number of bits in the prefix.
+   * @param value
+   *   The new value.
+   * @return
+   *   The root of the new subtree.
+   */
+  private static <V> Node<V> withPrefix(Node<V> node, long bits, int length, V value) {
+    Node<V> left = (node == null) ? null : node.left;
+    Node<V> right = (node == null) ? null : node.right;
+    if (length == 0) {
+      return new Node<>(left, right, value);
+    } // end of if loop
+    V here = (node == null) ? null : node.value;
+    if (((bits >>> (length - 1)) & 1) == 0) {
+      return new Node<>(withPrefix(left, bits, length - 1, value), right, here);
+    } else {
+      return new Node<>(left, withPrefix(right, bits, length - 1, value), here);
+    } // end of if loop
+  } // withPrefix(Node, long, int, V)
+
+  /**
+   * Build a copy of a subtree with one mapping changed.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param node
+   *   The root of the subtree, which may be null.
+   * @param bits
+   *   The key.
+   * @param remaining
+   *   The number of bits below the subtree's root.
+   * @param value
+   *   The new value.
+   * @return
+   *   The root of the new subtree.
+   */
+  private static <V> Node<V> withSet(Node<V> node, long bits, int remaining, V value) {
+    if (remaining == 0) {
+      return new Node<>(null, null, value);
+    } // end of if loop
+    Node<V> left = (node == null) ? null : node.left;
+    Node<V> right = (node == null) ? null : node.right;
+    V here = (node == null) ? null : node.value;
+    if (((bits >>> (remaining - 1)) & 1) == 0) {
+      return new Node<>(withSet(left, bits, remaining - 1, value), right, here);
+    } else {
+      return new Node<>(left, withSet(right, bits, remaining - 1, value), here);
+    } // end of if loop
+  } // withSet(Node, long, int, V)
+
+  /**
+   * Build a copy of a subtree with one mapping removed, leaving out
+   * every node that no longer has children or a prefix value.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param node
+   *   The root of the subtree, which holds the key.
+   * @param bits
+   *   The key.
+   * @param remaining
+   *   The number of bits below the subtree's root.
+   * @return
+   *   The root of the new subtree, or null if it is empty.
+   */
+  private static <V> Node<V> withRemoved(Node<V> node, long bits, int remaining) {
+    if (remaining == 0) {
+      return null;
+    } // end of if loop
+    Node<V> left = node.left;
+    Node<V> right = node.right;
+    if (((bits >>> (remaining - 1)) & 1) == 0) {
+      left = withRemoved(left, bits, remaining - 1);
+    } else {
+      right = withRemoved(right, bits, remaining - 1);
+    } // end of if loop
+    return ((left == null) && (right == null) && (node.value == null)) ? null
+        : new Node<>(left, right, node.value);
+  } // withRemoved(Node, long, int)
+
+  /**
+   * Find the shared copy of a subtree, building it from the shared
+   * copies of its children if no identical subtree has been seen.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param node
+   *   The root of the subtree, which may be null.
+   * @param shared
+   *   The shared copy of each distinct subtree seen so far, keyed by
+   *   itself.
+   * @param copies
+   *   The shared copy of each original node visited so far, so that
+   *   subtrees already shared in the original are visited once.
+   * @return
+   *   The shared copy, or null if the subtree is empty.
+   */
+  private static <V> Node<V> share(Node<V> node, Map<Node<V>, Node<V>> shared,
+      Map<Node<V>, Node<V>> copies) {
+    if (node == null) {
+      return null;
+    } // end of if loop
+    Node<V> copy = copies.get(node);
+    if (copy == null) {
+      Node<V> candidate = new Node<>(share(node.left, shared, copies),
+          share(node.right, shared, copies), node.value);
+      copy = shared.computeIfAbsent(candidate, key -> key);
+      copies.put(node, copy);
+    } // end of if loop
+    return copy;
+  } // share(Node, Map, Map)
+
+  /**
+   * Count the distinct nodes reachable from a node.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param node
+   *   The node, which may be null.
+   * @param seen
+   *   The nodes counted so far.
+   */
+  private static <V> void collect(Node<V> node, Map<Node<V>, Boolean> seen) {
+    if ((node != null) && (seen.put(node, Boolean.TRUE) == null)) {
+      collect(node.left, seen);
+      collect(node.right, seen);
+    } // end of if loop
+  } // collect(Node, Map)
+
+  // +---------------+-----------------------------------------------
+  // | Local helpers |
+  // +---------------+
+
+  /**
+   * Recursively visit the mappings in a range below a node.
+   *
+   * @param visitor
+   *   The visitor.
+   * @param node
+   *   The current node.
+   * @param prefix
+   *   The bits on the path to the node.
+   * @param remaining
+   *   The number of bits below the node.
+   * @param lo
+   *   The smallest key in the range.
+   * @param hi
+   *   The largest key in the range.
+   * @return
+   *   False if the visitor stopped the scan; true otherwise.
+   */
+  private boolean scanHelper(Visitor<? super V> visitor, Node<V> node, long prefix,
+      int remaining, long lo, long hi) {
+    if ((node == null) || !overlaps(prefix << remaining, remaining, lo, hi)) {
+      return true;
+    } // end of if loop
+    if (remaining == 0) {
+      return visitor.visit(node.value, prefix);
+    } // end of if loop
+    return scanHelper(visitor, node.left, prefix << 1, remaining - 1, lo, hi)
+        && scanHelper(visitor, node.right, (prefix << 1) | 1, remaining - 1, lo, hi);
+  } // scanHelper(Visitor, Node, long, int, long, long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Refuse to change the tree.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @param value
+   *   The value.
+   * @throws UnsupportedOperationException
+   *   Always, since frozen trees are immutable; use
+   *   <code>withSet</code> instead.
+   */
+  @Override
+  public void set(long bits, V value) {
+    throw new UnsupportedOperationException("Frozen trees are immutable; use withSet");
+  } // set(long, V)
+
+  /**
+   * Refuse to change the tree.
+   *
+   * @param bits
+   *   The prefix.
+   * @param length
+   *   The number of bits in the prefix.
+   * @param value
+   *   The value.
+   * @throws UnsupportedOperationException
+   *   Always, since frozen trees are immutable.
+   */
+  @Override
+  public void setPrefix(long bits, int length, V value) {
+    throw new UnsupportedOperationException("Frozen trees are immutable");
+  } // setPrefix(long, int, V)
+
+  /**
+   * Create a new version of this tree with one mapping added or
+   * replaced. This tree is unchanged; the new version shares all but
+   * the nodes on the path to <code>bits</code> with it.
+   *
+   * @param bits
+   *   The bit pattern (must fit in the depth of the tree).
+   * @param value
+   *   The value to store at the bit pattern.
+   * @return
+   *   The new version.
+   * @throws IndexOutOfBoundsException
+   *   If the bit pattern has bits set above the depth of the tree.
+   */
+  public FrozenBitTree<V> withSet(long bits, V value) {
+    if (!isValidBits(bits)) {
+      throw new IndexOutOfBoundsException("Invalid bit sequence");
+    } // end of if loop
+    Objects.requireNonNull(value);
+    long count = (getOrNull(bits) == null) ? size + 1 : size;
+    return new FrozenBitTree<>(depth(), codec(), withSet(root, bits, depth(), value), count);
+  } // withSet(long, V)
+
+  /**
+   * Create a new version of this tree with one mapping added or
+   * replaced.
+   *
+   * @param bits
+   *   The bit sequence (must be of appropriate length).
+   * @param value
+   *   The value to store at the bit sequence.
+   * @return
+   *   The new version.
+   * @throws IndexOutOfBoundsException
+   *   If the bit sequence is invalid.
+   */
+  public FrozenBitTree<V> withSet(String bits, V value) {
+    return withSet(toBits(bits), value);
+  } // withSet(String, V)
+
+  /**
+   * Create a new version of this tree without the mapping for a bit
+   * pattern. This tree is unchanged; the new version shares all but
+   * the nodes on the path to <code>bits</code> with it, and drops the
+   * nodes on that path that would be left without children.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The new version, or this tree if the pattern has no value.
+   */
+  public FrozenBitTree<V> withRemoved(long bits) {
+    if (getOrNull(bits) == null) {
+      return this;
+    } // end of if loop
+    return new FrozenBitTree<>(depth(), codec(), withRemoved(root, bits, depth()), size - 1);
+  } // withRemoved(long)
+
+  /**
+   * Create a new version of this tree without the mapping for a bit
+   * sequence.
+   *
+   * @param bits
+   *   The bit sequence (must be of appropriate length).
+   * @return
+   *   The new version, or this tree if the sequence has no value.
+   * @throws IndexOutOfBoundsException
+   *   If the bit sequence is invalid.
+   */
+  public FrozenBitTree<V> withRemoved(String bits) {
+    return withRemoved(toBits(bits));
+  } // withRemoved(String)
+
+  /**
+   * Refuse to change the tree.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   Never returns normally.
+   * @throws UnsupportedOperationException
+   *   Always, since frozen trees are immutable; use
+   *   <code>withRemoved</code> instead.
+   */
+  @Override
+  public V remove(long bits) {
+    throw new UnsupportedOperationException("Frozen trees are immutable; use withRemoved");
+  } // remove(long)
+
+  /**
+   * Refuse to change the tree.
+   *
+   * @throws UnsupportedOperationException
+   *   Always, since frozen trees are immutable.
+   */
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("Frozen trees are immutable");
+  } // clear()
+
+  /**
+   * Get the number of mappings in the tree.
+   *
+   * @return
+   *   The number of keys with values.
+   */
+  @Override
+  public long size() {
+    return size;
+  } // size()
+
+  /**
+   * Retrieve the value associated with a bit pattern, or null if there
+   * is none.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value, or null if the pattern has no value or does not fit
+   *   in the depth of the tree.
+   */
+  @Override
+  public V getOrNull(long bits) {
+    if (!isValidBits(bits)) {
+      return null;
+    } // end of if loop
+    Node<V> current = root;
+    for (int shift = depth() - 1; (shift >= 0) && (current != null); shift--) {
+      current = (((bits >>> shift) & 1) == 0) ? current.left : current.right;
+    } // end of for loop
+    return (current == null) ? null : current.value;
+  } // getOrNull(long)
+
+  /**
+   * Find the value for the longest prefix of a key that has one, in a
+   * single descent.
+   *
+   * @param key
+   *   The key, in the low <code>length</code> bits.
+   * @param length
+   *   The number of bits in the key, between 0 and the depth.
+   * @return
+   *   The value for the longest prefix of the key (including the whole
+   *   key) that has a value, or null if none does.
+   * @throws IndexOutOfBoundsException
+   *   If the length is out of range or the key does not fit in it.
+   */
+  @Override
+  public V longestPrefixMatch(long key, int length) {
+    checkPrefix(key, length);
+    V best = null;
+    Node<V> current = root;
+    for (int level = 0; current != null; level++) {
+      if (current.value != null) {
+        best = current.value;
+      } // end of if loop
+      if (level == length) {
+        break;
+      } // end of if loop
+      current = (((key >>> (length - 1 - level)) & 1) == 0) ? current.left : current.right;
+    } // end of for loop
+    return best;
+  } // longestPrefixMatch(long, int)
+
+  /**
+   * Create a copy of this tree in which identical subtrees are shared,
+   * so that it holds one node per distinct subtree. Two subtrees are
+   * identical when they have the same shape and equal values at the
+   * same positions. This tree is unchanged.
+   *
+   * @return
+   *   The compacted tree, which reports how many nodes were merged
+   *   away through <code>eliminatedNodes</code>.
+   */
+  @Override
+  public FrozenBitTree<V> compact() {
+    Map<Node<V>, Node<V>> copies = new IdentityHashMap<>();
+    Map<Node<V>, Node<V>> shared = new HashMap<>();
+    Node<V> top = share(root, shared, copies);
+    return new FrozenBitTree<>(depth(), codec(), top, size, copies.size() - shared.size());
+  } // compact()
+
+  /**
+   * Get the number of nodes that <code>compact</code> merged away when
+   * it built this tree.
+   *
+   * @return
+   *   The number of nodes eliminated, or 0 if this tree was not built
+   *   by <code>compact</code>.
+   */
+  public long eliminatedNodes() {
+    return eliminated;
+  } // eliminatedNodes()
+
+  /**
+   * Count the distinct nodes in the tree, interior nodes and leaves
+   * alike. A node shared by several parents is counted once.
+   *
+   * @return
+   *   The number of nodes.
+   */
+  @Override
+  public long nodeCount() {
+    Map<Node<V>, Boolean> seen = new IdentityHashMap<>();
+    collect(root, seen);
+    return seen.size();
+  } // nodeCount()
+
+  /**
+   * Estimate the memory used by the structure of the tree, not
+   * counting the values themselves. Shared nodes are counted once.
+   *
+   * @return
+   *   The estimate, in bytes.
+   */
+  @Override
+  public long memoryEstimate() {
+    return nodeCount() * NODE_BYTES;
+  } // memoryEstimate()
+
+  /**
+   * Get this tree, which is already frozen.
+   *
+   * @return
+   *   This tree.
+   */
+  @Override
+  public FrozenBitTree<V> freeze() {
+    return this;
+  } // freeze()
+
+  /**
+   * Visit the mappings whose keys fall in a range, in key order.
+   *
+   * @param visitor
+   *   The visitor, which may stop the scan by returning false.
+   * @param lo
+   *   The smallest key in the range.
+   * @param hi
+   *   The largest key in the range.
+   * @return
+   *   False if the visitor stopped the scan; true otherwise.
+   */
+  @Override
+  boolean scan(Visitor<? super V> visitor, long lo, long hi) {
+    return scanHelper(visitor, root, 0, depth(), lo, hi);
+  } // scan(Visitor, long, long)
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * Immutable nodes. Nodes at the last level hold values; the others
+   * hold children and, optionally, prefix values.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   */
+  private static final class Node<V> {
+    /**
+     * The child for bit 0.
+     */
+    final Node<V> left;
+
+    /**
+     * The child for bit 1.
+     */
+    final Node<V> right;
+
+    /**
+     * The value, for nodes at the last level, or the prefix value, if
+     * any, for the others.
+     */
+    final V value;
+
+    /**
+     * Create a node.
+     *
+     * @param zero
+     *   The child for bit 0.
+     * @param one
+     *   The child for bit 1.
+     * @param val
+     *   The value.
+     */
+    Node(Node<V> zero, Node<V> one, V val) {
+      this.left = zero;
+      this.right = one;
+      this.value = val;
+    } // Node(Node, Node, V)
+
+    /**
+     * Determine whether another node has the same children and an
+     * equal value. Children are compared by identity, which for nodes
+     * whose children are already shared is the same as comparing the
+     * subtrees.
+     *
+     * @param other
+     *   The object to compare.
+     * @return
+     *   True if the nodes are interchangeable; false otherwise.
+     */
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Node)) {
+        return false;
+      } // end of if loop
+      Node<?> node = (Node<?>) other;
+      return (left == node.left) && (right == node.right) && Objects.equals(value, node.value);
+    } // equals(Object)
+
+    /**
+     * Compute a hash code consistent with <code>equals</code>.
+     *
+     * @return
+     *   The hash code.
+     */
+    @Override
+    public int hashCode() {
+      return Objects.hash(System.identityHashCode(left), System.identityHashCode(right),
+          value);
+    } // hashCode()
+  } // class Node
+} // class FrozenBitTree
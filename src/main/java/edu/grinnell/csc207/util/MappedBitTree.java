@@ -0,0 +1,313 @@
+package edu.grinnell.csc207.util;
+
+import java.nio.IntBuffer;
+
+/**
+ * Read-only bit trees whose nodes live in a memory-mapped snapshot.
+ * See <code>BitTreeSnapshot</code> for the layout of the nodes.
+ *
+ * <p>Nodes are read only as lookups and scans reach them, so they are
+ * checked then, not when the snapshot is mapped: a child that names no
+ * node, or a leaf that names no value, raises an
+ * <code>IllegalStateException</code> from the lookup or scan that
+ * reaches it.</p>
+ *
+ * @param <V>
+ *   The type of values stored in the tree.
+ *
+ * @author Slok Rajbhandari
+ */
+class MappedBitTree<V> extends BitTree<V> {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The nodes, two ints each, in mappings of
+   * <code>1 &lt;&lt; chunkBits</code> ints, since no one mapping may
+   * exceed 2 GB.
+   */
+  private final IntBuffer[] nodes;
+
+  /**
+   * The base-2 logarithm of the number of ints in each mapping of
+   * nodes but the last.
+   */
+  private final int chunkBits;
+
+  /**
+   * The number of nodes.
+   */
+  private final int nodeCount;
+
+  /**
+   * The decoded value pool.
+   */
+  private final V[] values;
+
+  /**
+   * The number of mappings, or -1 if not yet counted.
+   */
+  private volatile long size;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a tree over mapped nodes.
+   *
+   * @param n
+   *   The depth of the tree.
+   * @param valueCodec
+   *   Converts values to and from text.
+   * @param mappedNodes
+   *   The nodes, in mappings of <code>1 &lt;&lt; chunkShift</code> ints
+   *   each but the last.
+   * @param chunkShift
+   *   The base-2 logarithm of the number of ints in each mapping.
+   * @param count
+   *   The number of nodes.
+   * @param pool
+   *   The decoded value pool.
+   */
+  MappedBitTree(int n, BitTreeCodec<V> valueCodec, IntBuffer[] mappedNodes, int chunkShift,
+      int count, V[] pool) {
+    super(n, valueCodec);
+    this.nodes = mappedNodes;
+    this.chunkBits = chunkShift;
+    this.nodeCount = count;
+    this.values = pool;
+    this.size = -1;
+  } // MappedBitTree(int, BitTreeCodec, IntBuffer[], int, int, V[])
+
+  // +---------------+-----------------------------------------------
+  // | Local helpers |
+  // +---------------+
+
+  /**
+   * Read one child of a node, checking that it names a node or, at the
+   * last level, a value.
+   *
+   * @param node
+   *   The index of the node.
+   * @param bit
+   *   0 for the child for bit 0; 1 for the child for bit 1.
+   * @param leaf
+   *   True if the child is at the last level; false otherwise.
+   * @return
+   *   The child, as stored in the snapshot: 0 if missing, the index of
+   *   a node, or, for a leaf, the complement of the index of a value.
+   * @throws IllegalStateException
+   *   If the child is out of range, which only a corrupt snapshot
+   *   allows.
+   */
+  private int child(int node, int bit, boolean leaf) {
+    long i = 2L * node + bit;
+    int child = nodes[(int) (i >>> chunkBits)].get((int) (i & ((1L << chunkBits) - 1)));
+    if ((child != 0)
+        && (leaf ? ((child > 0) || (~child >= values.length))
+            : ((child < 0) || (child >= nodeCount)))) {
+      throw new IllegalStateException("Corrupt snapshot: node " + node + " has "
+          + (leaf ? "leaf " : "child ") + child);
+    } // end of if loop
+    return child;
+  } // child(int, int, boolean)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Refuse to change the tree.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @param value
+   *   The value.
+   * @throws UnsupportedOperationException
+   *   Always, since snapshots are read-only.
+   */
+  @Override
+  public void set(long bits, V value) {
+    throw new UnsupportedOperationException("Snapshots are read-only");
+  } // set(long, V)
+
+  /**
+   * Refuse to change the tree.
+   *
+   * @param bits
+   *   The prefix.
+   * @param length
+   *   The number of bits in the prefix.
+   * @param value
+   *   The value.
+   * @throws UnsupportedOperationException
+   *   Always, since snapshots are read-only.
+   */
+  @Override
+  public void setPrefix(long bits, int length, V value) {
+    throw new UnsupportedOperationException("Snapshots are read-only");
+  } // setPrefix(long, int, V)
+
+  /**
+   * Refuse to change the tree.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   Never returns normally.
+   * @throws UnsupportedOperationException
+   *   Always, since snapshots are read-only.
+   */
+  @Override
+  public V remove(long bits) {
+    throw new UnsupportedOperationException("Snapshots are read-only");
+  } // remove(long)
+
+  /**
+   * Refuse to change the tree.
+   *
+   * @throws UnsupportedOperationException
+   *   Always, since snapshots are read-only.
+   */
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("Snapshots are read-only");
+  } // clear()
+
+  /**
+   * Get the number of mappings in the tree. The first call counts the
+   * leaf slots, which are the only negative children, without decoding
+   * any values.
+   *
+   * @return
+   *   The number of keys with values.
+   */
+  @Override
+  public long size() {
+    long count = size;
+    if (count < 0) {
+      count = 0;
+      for (IntBuffer chunk : nodes) {
+        for (int i = 0; i < chunk.limit(); i++) {
+          if (chunk.get(i) < 0) {
+            count++;
+          } // end of if loop
+        } // end of for loop
+      } // end of for loop
+      size = count;
+    } // end of if loop
+    return count;
+  } // size()
+
+  /**
+   * Retrieve the value associated with a bit pattern, or null if there
+   * is none.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value, or null if the pattern has no value or does not fit
+   *   in the depth of the tree.
+   */
+  @Override
+  public V getOrNull(long bits) {
+    if (!isValidBits(bits)) {
+      return null;
+    } // end of if loop
+    if (nodeCount == 0) {
+      return null;
+    } // end of if loop
+    int node = 0;
+    for (int shift = depth() - 1; shift > 0; shift--) {
+      node = child(node, (int) (bits >>> shift) & 1, false);
+      if (node == 0) {
+        return null;
+      } // end of if loop
+    } // end of for loop
+    int leaf = child(node, (int) bits & 1, true);
+    if (leaf == 0) {
+      return null;
+    } // end of if loop
+    return values[~leaf];
+  } // getOrNull(long)
+
+  /**
+   * Visit the mappings whose keys fall in a range, in key order.
+   *
+   * @param visitor
+   *   The visitor, which may stop the scan by returning false.
+   * @param lo
+   *   The smallest key in the range.
+   * @param hi
+   *   The largest key in the range.
+   * @return
+   *   False if the visitor stopped the scan; true otherwise.
+   */
+  @Override
+  boolean scan(Visitor<? super V> visitor, long lo, long hi) {
+    return (nodeCount == 0) || scanHelper(visitor, 0, 0, depth(), lo, hi);
+  } // scan(Visitor, long, long)
+
+  /**
+   * Recursively visit the mappings in a range below a node.
+   *
+   * @param visitor
+   *   The visitor.
+   * @param node
+   *   The index of the node.
+   * @param prefix
+   *   The bits on the path to the node.
+   * @param remaining
+   *   The number of bits below the node.
+   * @param lo
+   *   The smallest key in the range.
+   * @param hi
+   *   The largest key in the range.
+   * @return
+   *   False if the visitor stopped the scan; true otherwise.
+   */
+  private boolean scanHelper(Visitor<? super V> visitor, int node, long prefix,
+      int remaining, long lo, long hi) {
+    for (int bit = 0; bit <= 1; bit++) {
+      int child = child(node, bit, remaining == 1);
+      long bits = (prefix << 1) | bit;
+      if ((child == 0) || !overlaps(bits << (remaining - 1), remaining - 1, lo, hi)) {
+        continue;
+      } // end of if loop
+      if (remaining == 1) {
+        if (!visitor.visit(values[~child], bits)) {
+          return false;
+        } // end of if loop
+      } else if (!scanHelper(visitor, child, bits, remaining - 1, lo, hi)) {
+        return false;
+      } // end of if loop
+    } // end of for loop
+    return true;
+  } // scanHelper(Visitor, int, long, int, long, long)
+
+  /**
+   * Count the nodes in the snapshot, with one leaf for each mapping.
+   *
+   * @return
+   *   The number of interior nodes and leaves.
+   */
+  @Override
+  public long nodeCount() {
+    return super.nodeCount() + nodeCount;
+  } // nodeCount()
+
+  /**
+   * Estimate the memory used by the structure of the tree, not
+   * counting the values themselves. The nodes are mapped from the
+   * snapshot file rather than held on the heap.
+   *
+   * @return
+   *   The estimate, in bytes.
+   */
+  @Override
+  public long memoryEstimate() {
+    return 2L * Integer.BYTES * nodeCount;
+  } // memoryEstimate()
+} // class MappedBitTree
@@ -0,0 +1,230 @@
+package edu.grinnell.csc207.util;
+
+/**
+ * A parser for the CSV mapping format read by <code>BitTree.load</code>.
+ * Each line holds a key of '0' and '1' characters, a comma, and a
+ * value that runs to the end of the line. The parser works directly on
+ * bytes, builds each key as a long as it reads it, and hands values to
+ * its handler as byte ranges, so it allocates nothing per line. Input
+ * may be fed in chunks of any size; lines may span chunks.
+ *
+ * @author Slok Rajbhandari
+ */
+class MappingParser {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of bits in each key.
+   */
+  private final int depth;
+
+  /**
+   * Receives the parsed mappings.
+   */
+  private final Handler handler;
+
+  /**
+   * The number of the current line, starting at 1.
+   */
+  private int line;
+
+  /**
+   * The key read so far on the current line.
+   */
+  private long key;
+
+  /**
+   * The number of key bits read so far on the current line.
+   */
+  private int keyLength;
+
+  /**
+   * Whether we have passed the comma on the current line.
+   */
+  private boolean inValue;
+
+  /**
+   * Whether the current line has a carriage return before its key ends.
+   */
+  private boolean sawReturn;
+
+  /**
+   * The bytes of the value read so far on the current line.
+   */
+  private byte[] value;
+
+  /**
+   * The number of bytes in <code>value</code>.
+   */
+  private int valueLength;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a parser for keys of the given length.
+   *
+   * @param n
+   *   The number of bits in each key.
+   * @param mappingHandler
+   *   Receives the parsed mappings.
+   */
+  MappingParser(int n, Handler mappingHandler) {
+    this.depth = n;
+    this.handler = mappingHandler;
+    this.line = 1;
+    this.value = new byte[64];
+  } // MappingParser(int, Handler)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Parse the next chunk of input.
+   *
+   * @param bytes
+   *   The array containing the chunk.
+   * @param off
+   *   The index of the first byte of the chunk.
+   * @param len
+   *   The number of bytes in the chunk.
+   * @throws IllegalArgumentException
+   *   If a line is malformed.
+   */
+  void parse(byte[] bytes, int off, int len) {
+    for (int i = off; i < off + len; i++) {
+      byte b = bytes[i];
+      if (b == '\n') {
+        endLine();
+      } else if (inValue) {
+        if (valueLength == value.length) {
+          byte[] bigger = new byte[value.length * 2];
+          System.arraycopy(value, 0, bigger, 0, valueLength);
+          value = bigger;
+        } // end of if loop
+        value[valueLength++] = b;
+      } else if (sawReturn) {
+        fail("unexpected carriage return");
+      } else if ((b == '0') || (b == '1')) {
+        if (++keyLength > depth) {
+          fail("key longer than " + depth + " bits");
+        } // end of if loop
+        key = (key << 1) | (b - '0');
+      } else if (b == ',') {
+        if (keyLength != depth) {
+          fail("key of " + keyLength + " bits instead of " + depth);
+        } // end of if loop
+        inValue = true;
+      } else if (b == '\r') {
+        sawReturn = true;
+      } else {
+        fail("invalid character '" + (char) (b & 0xFF) + "' in key");
+      } // end of if loop
+    } // end of for loop
+  } // parse(byte[], int, int)
+
+  /**
+   * Finish parsing, handling a final line with no line terminator.
+   *
+   * @throws IllegalArgumentException
+   *   If the final line is malformed.
+   */
+  void finish() {
+    if (inValue || (keyLength != 0)) {
+      endLine();
+    } // end of if loop
+  } // finish()
+
+  /**
+   * Get the number of the line being parsed. Once a chunk that ends
+   * with a newline has been parsed, this is one more than the number
+   * of lines in it.
+   *
+   * @return
+   *   The line number, starting at 1.
+   */
+  int line() {
+    return line;
+  } // line()
+
+  // +---------------+-----------------------------------------------
+  // | Local helpers |
+  // +---------------+
+
+  /**
+   * Handle the end of a line.
+   */
+  private void endLine() {
+    if (inValue) {
+      int length = valueLength;
+      if ((length > 0) && (value[length - 1] == '\r')) {
+        length--;
+      } // end of if loop
+      handler.mapping(key, value, 0, length, line);
+    } else if (keyLength != 0) {
+      fail("no comma after key");
+    } // end of if loop
+    line++;
+    key = 0;
+    keyLength = 0;
+    inValue = false;
+    sawReturn = false;
+    valueLength = 0;
+  } // endLine()
+
+  /**
+   * Report a malformed line.
+   *
+   * @param problem
+   *   What is wrong with the line.
+   * @throws IllegalArgumentException
+   *   Always.
+   */
+  private void fail(String problem) {
+    throw new IllegalArgumentException(message(line, problem));
+  } // fail(String)
+
+  /**
+   * Describe a malformed line.
+   *
+   * @param line
+   *   The number of the line.
+   * @param problem
+   *   What is wrong with the line.
+   * @return
+   *   The message for the exception that reports it.
+   */
+  static String message(long line, String problem) {
+    return "Malformed mapping on line " + line + ": " + problem;
+  } // message(long, String)
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * Receives mappings from a parser.
+   */
+  interface Handler {
+    /**
+     * Handle one mapping. The value bytes are only valid until this
+     * method returns.
+     *
+     * @param bits
+     *   The key.
+     * @param value
+     *   The array holding the bytes of the value.
+     * @param off
+     *   The index of the first byte of the value.
+     * @param len
+     *   The number of bytes in the value.
+     * @param line
+     *   The line on which the mapping appears.
+     */
+    void mapping(long bits, byte[] value, int off, int len, int line);
+  } // interface Handler
+} // class MappingParser
@@ -0,0 +1,509 @@
+package edu.grinnell.csc207.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bit trees whose nodes and values live outside the Java heap, in
+ * direct buffers. The garbage collector sees only the two buffers, not
+ * one object per node, however large the tree grows.
+ *
+ * <p>Nodes use the same layout as <code>BitTreeSnapshot</code>: a pair
+ * of int children for bits 0 and 1, where a child is the index of
+ * another node (0 if missing) or, at the last level, the complement of
+ * the offset of the value in the value pool. Values are stored in the
+ * pool as a byte count followed by the UTF-8 text given by the tree's
+ * codec. Nodes emptied by <code>remove</code> are kept on a free
+ * list, threaded through their left children, and reused by later
+ * additions. Values that are replaced or removed are likewise kept on
+ * free lists, one for each byte count, threaded through their counts,
+ * and a later value with the same number of bytes takes their place;
+ * a tree whose values are all one or two characters long therefore
+ * stops growing its pool once it has seen every length.</p>
+ *
+ * <p>Values are decoded on every lookup, which allocates a string and
+ * the decoded value each time. They are not cached: a cache would put
+ * one heap object per value back in front of the pool, which is just
+ * what this tree exists to avoid. Callers that look up the same key
+ * often should keep the value they get.</p>
+ *
+ * @param <V>
+ *   The type of values stored in the tree.
+ *
+ * @author Slok Rajbhandari
+ */
+public class OffHeapBitTree<V> extends BitTree<V> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bytes in a node.
+   */
+  static final int NODE_SIZE = 2 * Integer.BYTES;
+
+  /**
+   * The initial capacity of each buffer, in bytes.
+   */
+  static final int INITIAL_CAPACITY = 1 << 12;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The nodes. Node 0 is the root.
+   */
+  private ByteBuffer nodes;
+
+  /**
+   * The number of nodes allocated, including the root and the nodes on
+   * the free list.
+   */
+  private int nodeCount;
+
+  /**
+   * The number of nodes other than the root that are linked into the
+   * tree.
+   */
+  private int liveNodes;
+
+  /**
+   * The first node on the free list, or 0 if the list is empty.
+   */
+  private int freeList;
+
+  /**
+   * The number of mappings.
+   */
+  private long size;
+
+  /**
+   * The value pool.
+   */
+  private ByteBuffer pool;
+
+  /**
+   * The number of bytes of the pool in use.
+   */
+  private int poolSize;
+
+  /**
+   * The first free entry of the pool of each byte count. Each free
+   * entry holds the offset of the next free entry of its byte count, or
+   * -1, in place of its byte count.
+   */
+  private final Map<Integer, Integer> freeValues;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an off-heap tree of strings with the given depth.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and 64.
+   */
+  @SuppressWarnings("unchecked")
+  public OffHeapBitTree(int n) {
+    this(n, (BitTreeCodec<V>) BitTreeCodec.strings());
+  } // OffHeapBitTree(int)
+
+  /**
+   * Create an off-heap tree with the given depth and codec.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and 64.
+   * @param valueCodec
+   *   Converts values to and from the text stored in the pool.
+   */
+  public OffHeapBitTree(int n, BitTreeCodec<V> valueCodec) {
+    super(n, valueCodec);
+    this.nodes = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+    this.nodeCount = 1;
+    this.liveNodes = 0;
+    this.freeList = 0;
+    this.size = 0;
+    this.pool = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+    this.poolSize = 0;
+    this.freeValues = new HashMap<>();
+  } // OffHeapBitTree(int, BitTreeCodec)
+
+  // +---------------+-----------------------------------------------
+  // | Local helpers |
+  // +---------------+
+
+  /**
+   * Copy a buffer into a new direct buffer with at least the given
+   * capacity.
+   *
+   * @param buffer
+   *   The buffer to copy.
+   * @param used
+   *   The number of bytes of the buffer in use.
+   * @param needed
+   *   The capacity needed.
+   * @return
+   *   The new buffer.
+   * @throws IllegalStateException
+   *   If the capacity needed is more than a buffer can hold.
+   */
+  private static ByteBuffer grow(ByteBuffer buffer, int used, long needed) {
+    if (needed > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Off-heap tree is full");
+    } // end of if loop
+    long capacity = Math.max(needed, Math.min(Integer.MAX_VALUE, 2L * buffer.capacity()));
+    ByteBuffer bigger = ByteBuffer.allocateDirect((int) capacity);
+    bigger.put(buffer.duplicate().position(0).limit(used));
+    return bigger;
+  } // grow(ByteBuffer, int, long)
+
+  /**
+   * Get a child of a node.
+   *
+   * @param node
+   *   The index of the node.
+   * @param bit
+   *   0 for the left child or 1 for the right child.
+   * @return
+   *   The child.
+   */
+  private int child(int node, int bit) {
+    return nodes.getInt(node * NODE_SIZE + bit * Integer.BYTES);
+  } // child(int, int)
+
+  /**
+   * Set a child of a node.
+   *
+   * @param node
+   *   The index of the node.
+   * @param bit
+   *   0 for the left child or 1 for the right child.
+   * @param child
+   *   The new child.
+   */
+  private void setChild(int node, int bit, int child) {
+    nodes.putInt(node * NODE_SIZE + bit * Integer.BYTES, child);
+  } // setChild(int, int, int)
+
+  /**
+   * Add a new, empty node, reusing a freed node if there is one.
+   *
+   * @return
+   *   The index of the new node.
+   */
+  private int newNode() {
+    liveNodes++;
+    if (freeList != 0) {
+      int node = freeList;
+      freeList = child(node, 0);
+      setChild(node, 0, 0);
+      return node;
+    } // end of if loop
+    long needed = (long) (nodeCount + 1) * NODE_SIZE;
+    if (needed > nodes.capacity()) {
+      nodes = grow(nodes, nodeCount * NODE_SIZE, needed);
+    } // end of if loop
+    setChild(nodeCount, 0, 0);
+    setChild(nodeCount, 1, 0);
+    return nodeCount++;
+  } // newNode()
+
+  /**
+   * Add a value to the pool, in a free entry of the same byte count if
+   * there is one.
+   *
+   * @param value
+   *   The value.
+   * @return
+   *   The offset of the value in the pool.
+   */
+  private int addValue(V value) {
+    byte[] bytes = codec().encode(value).getBytes(StandardCharsets.UTF_8);
+    Integer free = freeValues.get(bytes.length);
+    if (free != null) {
+      int next = pool.getInt(free);
+      if (next < 0) {
+        freeValues.remove(bytes.length);
+      } else {
+        freeValues.put(bytes.length, next);
+      } // end of if loop
+      pool.putInt(free, bytes.length);
+      pool.put(free + Integer.BYTES, bytes);
+      return free;
+    } // end of if loop
+    long needed = (long) poolSize + Integer.BYTES + bytes.length;
+    if (needed > pool.capacity()) {
+      pool = grow(pool, poolSize, needed);
+    } // end of if loop
+    int offset = poolSize;
+    pool.putInt(offset, bytes.length);
+    pool.put(offset + Integer.BYTES, bytes);
+    poolSize = (int) needed;
+    return offset;
+  } // addValue(V)
+
+  /**
+   * Put an entry of the pool on the free list for its byte count.
+   *
+   * @param offset
+   *   The offset of the entry in the pool.
+   */
+  private void freeValue(int offset) {
+    Integer next = freeValues.put(pool.getInt(offset), offset);
+    pool.putInt(offset, (next == null) ? -1 : next);
+  } // freeValue(int)
+
+  /**
+   * Read a value from the pool.
+   *
+   * @param offset
+   *   The offset of the value in the pool.
+   * @return
+   *   The decoded value.
+   */
+  private V value(int offset) {
+    byte[] bytes = new byte[pool.getInt(offset)];
+    pool.get(offset + Integer.BYTES, bytes);
+    return codec().decode(new String(bytes, StandardCharsets.UTF_8));
+  } // value(int)
+
+  /**
+   * Recursively visit the mappings in a range below a node.
+   *
+   * @param visitor
+   *   The visitor.
+   * @param node
+   *   The index of the node.
+   * @param prefix
+   *   The bits on the path to the node.
+   * @param remaining
+   *   The number of bits below the node.
+   * @param lo
+   *   The smallest key in the range.
+   * @param hi
+   *   The largest key in the range.
+   * @return
+   *   False if the visitor stopped the scan; true otherwise.
+   */
+  private boolean scanHelper(Visitor<? super V> visitor, int node, long prefix,
+      int remaining, long lo, long hi) {
+    for (int bit = 0; bit <= 1; bit++) {
+      int child = child(node, bit);
+      long bits = (prefix << 1) | bit;
+      if ((child == 0) || !overlaps(bits << (remaining - 1), remaining - 1, lo, hi)) {
+        continue;
+      } // end of if loop
+      if (remaining == 1) {
+        if (!visitor.visit(value(~child), bits)) {
+          return false;
+        } // end of if loop
+      } else if (!scanHelper(visitor, child, bits, remaining - 1, lo, hi)) {
+        return false;
+      } // end of if loop
+    } // end of for loop
+    return true;
+  } // scanHelper(Visitor, int, long, int, long, long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Add a mapping from a bit pattern to a value.
+   *
+   * @param bits
+   *   The bit pattern (must fit in the depth of the tree).
+   * @param value
+   *   The value to store at the bit pattern, or null to remove the
+   *   mapping.
+   * @throws IndexOutOfBoundsException
+   *   If the bit pattern has bits set above the depth of the tree.
+   * @throws IllegalStateException
+   *   If the tree has outgrown its buffers.
+   */
+  @Override
+  public void set(long bits, V value) {
+    if (!isValidBits(bits)) {
+      throw new IndexOutOfBoundsException("Invalid bit sequence");
+    } // end of if loop
+    if (value == null) {
+      remove(bits);
+      return;
+    } // end of if loop
+    int node = 0;
+    for (int shift = depth() - 1; shift > 0; shift--) {
+      int bit = (int) ((bits >>> shift) & 1);
+      int next = child(node, bit);
+      if (next == 0) {
+        next = newNode();
+        setChild(node, bit, next);
+      } // end of if loop
+      node = next;
+    } // end of for loop
+    int bit = (int) (bits & 1);
+    int old = child(node, bit);
+    if (old == 0) {
+      size++;
+    } else {
+      freeValue(~old);
+    } // end of if loop
+    setChild(node, bit, ~addValue(value));
+  } // set(long, V)
+
+  /**
+   * Remove the mapping for a bit pattern, zeroing its slot and moving
+   * its value and every node left without children to the free lists.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value that was removed, or null if there was none.
+   */
+  @Override
+  public V remove(long bits) {
+    if (!isValidBits(bits)) {
+      return null;
+    } // end of if loop
+    int[] path = new int[depth()];
+    for (int level = 1; level < depth(); level++) {
+      path[level] = child(path[level - 1], (int) ((bits >>> (depth() - level)) & 1));
+      if (path[level] == 0) {
+        return null;
+      } // end of if loop
+    } // end of for loop
+    int leaf = child(path[depth() - 1], (int) (bits & 1));
+    if (leaf == 0) {
+      return null;
+    } // end of if loop
+    setChild(path[depth() - 1], (int) (bits & 1), 0);
+    size--;
+    for (int level = depth() - 1; level > 0; level--) {
+      int node = path[level];
+      if ((child(node, 0) != 0) || (child(node, 1) != 0)) {
+        break;
+      } // end of if loop
+      setChild(path[level - 1], (int) ((bits >>> (depth() - level)) & 1), 0);
+      setChild(node, 0, freeList);
+      freeList = node;
+      liveNodes--;
+    } // end of for loop
+    V value = value(~leaf);
+    freeValue(~leaf);
+    return value;
+  } // remove(long)
+
+  /**
+   * Remove every mapping and prefix value from the tree, releasing the
+   * space used by all nodes and values for reuse.
+   */
+  @Override
+  public void clear() {
+    setChild(0, 0, 0);
+    setChild(0, 1, 0);
+    nodeCount = 1;
+    liveNodes = 0;
+    freeList = 0;
+    poolSize = 0;
+    freeValues.clear();
+    size = 0;
+    super.clear();
+  } // clear()
+
+  /**
+   * Get the number of mappings in the tree.
+   *
+   * @return
+   *   The number of keys with values.
+   */
+  @Override
+  public long size() {
+    return size;
+  } // size()
+
+  /**
+   * Retrieve the value associated with a bit pattern, or null if there
+   * is none.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value, or null if the pattern has no value or does not fit
+   *   in the depth of the tree.
+   */
+  @Override
+  public V getOrNull(long bits) {
+    if (!isValidBits(bits)) {
+      return null;
+    } // end of if loop
+    int node = 0;
+    for (int shift = depth() - 1; shift > 0; shift--) {
+      node = child(node, (int) ((bits >>> shift) & 1));
+      if (node == 0) {
+        return null;
+      } // end of if loop
+    } // end of for loop
+    int leaf = child(node, (int) (bits & 1));
+    if (leaf == 0) {
+      return null;
+    } // end of if loop
+    return value(~leaf);
+  } // getOrNull(long)
+
+  /**
+   * Visit the mappings whose keys fall in a range, in key order.
+   *
+   * @param visitor
+   *   The visitor, which may stop the scan by returning false.
+   * @param lo
+   *   The smallest key in the range.
+   * @param hi
+   *   The largest key in the range.
+   * @return
+   *   False if the visitor stopped the scan; true otherwise.
+   */
+  @Override
+  boolean scan(Visitor<? super V> visitor, long lo, long hi) {
+    return scanHelper(visitor, 0, 0, depth(), lo, hi);
+  } // scan(Visitor, long, long)
+
+  /**
+   * Get the number of bytes of off-heap memory in use.
+   *
+   * @return
+   *   The bytes used by nodes and values.
+   */
+  public long offHeapBytes() {
+    return (long) nodeCount * NODE_SIZE + poolSize;
+  } // offHeapBytes()
+
+  /**
+   * Count the nodes in the tree, as <code>BitTree.nodeCount</code>
+   * does: the interior nodes linked into the tree, not those on the
+   * free list, and one leaf for each mapping. The root, which always
+   * exists, is counted only if the tree has a mapping.
+   *
+   * @return
+   *   The number of interior nodes in use, plus the leaves.
+   */
+  @Override
+  public long nodeCount() {
+    return super.nodeCount() + liveNodes + ((size > 0) ? 1 : 0);
+  } // nodeCount()
+
+  /**
+   * Estimate the memory used by the structure of the tree, not
+   * counting the values themselves. Nodes and values are off the heap;
+   * see <code>offHeapBytes</code>.
+   *
+   * @return
+   *   The estimate, in bytes.
+   */
+  @Override
+  public long memoryEstimate() {
+    return super.memoryEstimate() + offHeapBytes();
+  } // memoryEstimate()
+} // class OffHeapBitTree
@@ -0,0 +1,398 @@
+package edu.grinnell.csc207.util;
+
+/**
+ * Bit trees in which chains of single-child interior nodes are
+ * collapsed. Each interior node records the one bit at which the keys
+ * below it differ, so a lookup skips directly from one branching bit
+ * to the next and checks the full key when it reaches a leaf. A tree
+ * holding n keys has exactly 2n - 1 nodes, regardless of its depth,
+ * which suits sparse sets of long keys.
+ *
+ * @param <V>
+ *   The type of values stored in the tree.
+ *
+ * @author Slok Rajbhandari
+ */
+public class PatriciaBitTree<V> extends BitTree<V> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The estimated bytes used by a node, with compressed references.
+   */
+  static final long NODE_BYTES = 40;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The root of the tree, or null if the tree is empty.
+   */
+  private Node<V> root;
+
+  /**
+   * The number of leaves.
+   */
+  private long size;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a path-compressed tree of strings with the given depth.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and 64.
+   */
+  @SuppressWarnings("unchecked")
+  public PatriciaBitTree(int n) {
+    this(n, (BitTreeCodec<V>) BitTreeCodec.strings());
+  } // PatriciaBitTree(int)
+
+  /**
+   * Create a path-compressed tree with the given depth and codec.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and 64.
+   * @param valueCodec
+   *   Converts values to and from text.
+   */
+  public PatriciaBitTree(int n, BitTreeCodec<V> valueCodec) {
+    super(n, valueCodec);
+    this.root = null;
+    this.size = 0;
+  } // PatriciaBitTree(int, BitTreeCodec)
+
+  // +---------------+-----------------------------------------------
+  // | Local helpers |
+  // +---------------+
+
+  /**
+   * Find the child of an interior node on the path to a key.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   * @param node
+   *   The interior node.
+   * @param bits
+   *   The key.
+   * @return
+   *   The child on the path, which may be null.
+   */
+  private static <V> Node<V> child(Node<V> node, long bits) {
+    return (((bits >>> node.shift) & 1) == 0) ? node.left : node.right;
+  } // child(Node, long)
+
+  /**
+   * Find the leaf that shares the most leading bits with a key among
+   * those reachable by the key's branching bits.
+   *
+   * @param bits
+   *   The key.
+   * @return
+   *   The leaf, or null if the tree is empty.
+   */
+  private Node<V> findLeaf(long bits) {
+    Node<V> current = root;
+    while ((current != null) && (current.shift >= 0)) {
+      current = child(current, bits);
+    } // end of while loop
+    return current;
+  } // findLeaf(long)
+
+  /**
+   * Visit the leaves in a range below a node in key order.
+   *
+   * @param visitor
+   *   The visitor.
+   * @param node
+   *   The current node.
+   * @param lo
+   *   The smallest key in the range.
+   * @param hi
+   *   The largest key in the range.
+   * @return
+   *   False if the visitor stopped the scan; true otherwise.
+   */
+  private boolean scanHelper(Visitor<? super V> visitor, Node<V> node, long lo, long hi) {
+    if ((node == null) || !overlaps(node.key, node.shift + 1, lo, hi)) {
+      return true;
+    } // end of if loop
+    if (node.shift < 0) {
+      return visitor.visit(node.value, node.key);
+    } // end of if loop
+    return scanHelper(visitor, node.left, lo, hi) && scanHelper(visitor, node.right, lo, hi);
+  } // scanHelper(Visitor, Node, long, long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Add a mapping from a bit pattern to a value.
+   *
+   * @param bits
+   *   The bit pattern (must fit in the depth of the tree).
+   * @param value
+   *   The value to store at the bit pattern, or null to remove the
+   *   mapping.
+   * @throws IndexOutOfBoundsException
+   *   If the bit pattern has bits set above the depth of the tree.
+   */
+  @Override
+  public void set(long bits, V value) {
+    if (!isValidBits(bits)) {
+      throw new IndexOutOfBoundsException("Invalid bit sequence");
+    } // end of if loop
+    if (value == null) {
+      remove(bits);
+      return;
+    } // end of if loop
+    Node<V> closest = findLeaf(bits);
+    if (closest == null) {
+      root = new Node<>(bits, value);
+      size = 1;
+      return;
+    } // end of if loop
+    long diff = closest.key ^ bits;
+    if (diff == 0) {
+      closest.value = value;
+      return;
+    } // end of if loop
+
+    // Find the first node that branches below the first differing bit
+    // and splice a new branch in above it.
+    int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(diff);
+    Node<V> parent = null;
+    Node<V> current = root;
+    while (current.shift > shift) {
+      parent = current;
+      current = child(current, bits);
+    } // end of while loop
+    Node<V> branch = new Node<>(shift, bits);
+    if (((bits >>> shift) & 1) == 0) {
+      branch.left = new Node<>(bits, value);
+      branch.right = current;
+    } else {
+      branch.left = current;
+      branch.right = new Node<>(bits, value);
+    } // end of if loop
+    if (parent == null) {
+      root = branch;
+    } else if (parent.left == current) {
+      parent.left = branch;
+    } else {
+      parent.right = branch;
+    } // end of if loop
+    size++;
+  } // set(long, V)
+
+  /**
+   * Remove the mapping for a bit pattern. The leaf's parent branch is
+   * no longer needed, so the leaf's sibling takes the parent's place,
+   * keeping the tree at 2n - 1 nodes.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value that was removed, or null if there was none.
+   */
+  @Override
+  public V remove(long bits) {
+    if (!isValidBits(bits) || (root == null)) {
+      return null;
+    } // end of if loop
+    Node<V> grandparent = null;
+    Node<V> parent = null;
+    Node<V> current = root;
+    while (current.shift >= 0) {
+      grandparent = parent;
+      parent = current;
+      current = child(current, bits);
+    } // end of while loop
+    if (current.key != bits) {
+      return null;
+    } // end of if loop
+    size--;
+    if (parent == null) {
+      root = null;
+      return current.value;
+    } // end of if loop
+    Node<V> sibling = (parent.left == current) ? parent.right : parent.left;
+    if (grandparent == null) {
+      root = sibling;
+    } else if (grandparent.left == parent) {
+      grandparent.left = sibling;
+    } else {
+      grandparent.right = sibling;
+    } // end of if loop
+    return current.value;
+  } // remove(long)
+
+  /**
+   * Remove every mapping and prefix value from the tree.
+   */
+  @Override
+  public void clear() {
+    root = null;
+    size = 0;
+    super.clear();
+  } // clear()
+
+  /**
+   * Get the number of mappings in the tree.
+   *
+   * @return
+   *   The number of leaves.
+   */
+  @Override
+  public long size() {
+    return size;
+  } // size()
+
+  /**
+   * Retrieve the value associated with a bit pattern, or null if there
+   * is none.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value, or null if the pattern has no value or does not fit
+   *   in the depth of the tree.
+   */
+  @Override
+  public V getOrNull(long bits) {
+    if (!isValidBits(bits)) {
+      return null;
+    } // end of if loop
+    Node<V> leaf = findLeaf(bits);
+    return ((leaf == null) || (leaf.key != bits)) ? null : leaf.value;
+  } // getOrNull(long)
+
+  /**
+   * Visit the mappings whose keys fall in a range, in key order.
+   *
+   * @param visitor
+   *   The visitor, which may stop the scan by returning false.
+   * @param lo
+   *   The smallest key in the range.
+   * @param hi
+   *   The largest key in the range.
+   * @return
+   *   False if the visitor stopped the scan; true otherwise.
+   */
+  @Override
+  boolean scan(Visitor<? super V> visitor, long lo, long hi) {
+    return scanHelper(visitor, root, lo, hi);
+  } // scan(Visitor, long, long)
+
+  /**
+   * Count the nodes in the tree.
+   *
+   * @return
+   *   The number of interior nodes and leaves.
+   */
+  @Override
+  public long nodeCount() {
+    return super.nodeCount() + countNodes(root, false);
+  } // nodeCount()
+
+  /**
+   * Estimate the memory used by the structure of the tree, not
+   * counting the values themselves.
+   *
+   * @return
+   *   The estimate, in bytes.
+   */
+  @Override
+  public long memoryEstimate() {
+    return super.memoryEstimate() + countNodes(root, true) * NODE_BYTES;
+  } // memoryEstimate()
+
+  /**
+   * Count the nodes below and including one node.
+   *
+   * @param node
+   *   The node, or null.
+   * @param leaves
+   *   True to count leaves as well as interior nodes.
+   * @return
+   *   The number of nodes.
+   */
+  private static long countNodes(Node<?> node, boolean leaves) {
+    if ((node == null) || (node.shift < 0)) {
+      return ((node != null) && leaves) ? 1 : 0;
+    } // end of if loop
+    return 1 + countNodes(node.left, leaves) + countNodes(node.right, leaves);
+  } // countNodes(Node, boolean)
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * Nodes in a path-compressed tree. Interior nodes have a
+   * non-negative shift naming the bit they test; leaves have a shift
+   * of -1 and hold a complete key and its value.
+   *
+   * @param <V>
+   *   The type of values stored in the tree.
+   */
+  private static class Node<V> {
+    /**
+     * The position of the bit tested by this node, or -1 for leaves.
+     */
+    final int shift;
+
+    /**
+     * The full key, for leaves. For interior nodes, any key below the
+     * node; all of them share its bits above <code>shift</code>.
+     */
+    final long key;
+
+    /**
+     * The value, for leaves.
+     */
+    V value;
+
+    /**
+     * The subtree of keys with a 0 at <code>shift</code>.
+     */
+    Node<V> left;
+
+    /**
+     * The subtree of keys with a 1 at <code>shift</code>.
+     */
+    Node<V> right;
+
+    /**
+     * Create an interior node.
+     *
+     * @param shift
+     *   The position of the bit tested by this node.
+     * @param key
+     *   Any key below the node.
+     */
+    Node(int shift, long key) {
+      this.shift = shift;
+      this.key = key;
+    } // Node(int, long)
+
+    /**
+     * Create a leaf.
+     *
+     * @param key
+     *   The key stored at the leaf.
+     * @param value
+     *   The value stored at the leaf.
+     */
+    Node(long key, V value) {
+      this.shift = -1;
+      this.key = key;
+      this.value = value;
+    } // Node(long, V)
+  } // class Node
+} // class PatriciaBitTree
@@ -0,0 +1,575 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Arrays;
+
+/**
+ * Bit trees whose nodes consume several bits of the key at once. With
+ * a stride of k, each node has up to <code>2^k</code> children indexed
+ * by the next k bits, so a lookup in a tree of depth d follows about
+ * d/k pointers instead of d. When k does not divide the depth, the
+ * last level consumes the bits that remain.
+ *
+ * <p>Nodes have one of two layouts. A dense node holds an array with
+ * a slot for every possible child. A sparse node holds a bitmap of the
+ * children it has and an array with just those children, in order; a
+ * child's slot is the number of bits set below its own. Trees that are
+ * not adaptive use only dense nodes. Adaptive trees start every node
+ * sparse and make it dense once it is half full, at which point the
+ * dense array costs little more than the sparse one and saves the
+ * bit count on every step.</p>
+ *
+ * @param <V>
+ *   The type of values stored in the tree.
+ *
+ * @author Slok Rajbhandari
+ */
+public class StrideBitTree<V> extends BitTree<V> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The widest stride, for which a sparse node's bitmap fits in a
+   * long.
+   */
+  public static final int MAX_STRIDE = 6;
+
+  /**
+   * The stride used when none is given.
+   */
+  public static final int DEFAULT_STRIDE = 4;
+
+  /**
+   * The estimated bytes used by a node apart from its slots: the
+   * node and the header of its slot array, with compressed references.
+   */
+  static final long NODE_BYTES = 56;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of key bits consumed by most nodes.
+   */
+  private final int stride;
+
+  /**
+   * The number of key bits consumed by the nodes at each level.
+   */
+  private final int[] widths;
+
+  /**
+   * The number of key bits below the bits consumed at each level.
+   */
+  private final int[] below;
+
+  /**
+   * Whether nodes start sparse and become dense as they fill.
+   */
+  private final boolean adaptive;
+
+  /**
+   * The root of the tree, or null if the tree is empty.
+   */
+  private Node root;
+
+  /**
+   * The number of mappings.
+   */
+  private long size;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an adaptive tree of strings with the default stride.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and 64.
+   */
+  public StrideBitTree(int n) {
+    this(n, DEFAULT_STRIDE);
+  } // StrideBitTree(int)
+
+  /**
+   * Create an adaptive tree of strings with the given stride.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and 64.
+   * @param stride
+   *   The number of bits consumed by each node, between 1 and
+   *   <code>MAX_STRIDE</code>.
+   */
+  @SuppressWarnings("unchecked")
+  public StrideBitTree(int n, int stride) {
+    this(n, stride, true, (BitTreeCodec<V>) BitTreeCodec.strings());
+  } // StrideBitTree(int, int)
+
+  /**
+   * Create a tree with the given depth, stride, layout, and codec.
+   *
+   * @param n
+   *   The depth of the tree, between 1 and 64.
+   * @param bitsPerNode
+   *   The number of bits consumed by each node, between 1 and
+   *   <code>MAX_STRIDE</code>.
+   * @param adaptiveLayout
+   *   True to start nodes sparse and make them dense as they fill;
+   *   false to make every node dense.
+   * @param valueCodec
+   *   Converts values to and from text.
+   * @throws IllegalArgumentException
+   *   If the depth or stride is out of range.
+   */
+  public StrideBitTree(int n, int bitsPerNode, boolean adaptiveLayout,
+      BitTreeCodec<V> valueCodec) {
+    super(n, valueCodec);
+    if ((bitsPerNode < 1) || (bitsPerNode > MAX_STRIDE)) {
+      throw new IllegalArgumentException("Stride must be between 1 and " + MAX_STRIDE);
+    } // end of if loop
+    this.stride = bitsPerNode;
+    int levels = (n + stride - 1) / stride;
+    this.widths = new int[levels];
+    this.below = new int[levels];
+    for (int level = 0; level < levels; level++) {
+      widths[level] = Math.min(stride, n - level * stride);
+      below[level] = n - level * stride - widths[level];
+    } // end of for loop
+    this.adaptive = adaptiveLayout;
+    this.root = null;
+    this.size = 0;
+  } // StrideBitTree(int, int, boolean, BitTreeCodec)
+
+  // +---------------+-----------------------------------------------
+  // | Local helpers |
+  // +---------------+
+
+  /**
+   * Get the index of the child that a key leads to at a level.
+   *
+   * @param bits
+   *   The key.
+   * @param level
+   *   The level of the node.
+   * @return
+   *   The index, between 0 and <code>2^widths[level] - 1</code>.
+   */
+  private int index(long bits, int level) {
+    return (int) ((bits >>> below[level]) & lowBits(widths[level]));
+  } // index(long, int)
+
+  /**
+   * Create an empty node for a level.
+   *
+   * @param level
+   *   The level.
+   * @return
+   *   The node.
+   */
+  private Node newNode(int level) {
+    return new Node(1 << widths[level], !adaptive);
+  } // newNode(int)
+
+  /**
+   * Recursively visit the mappings in a range below a node.
+   *
+   * @param visitor
+   *   The visitor.
+   * @param node
+   *   The current node.
+   * @param prefix
+   *   The bits on the path to the node.
+   * @param level
+   *   The level of the node.
+   * @param lo
+   *   The smallest key in the range.
+   * @param hi
+   *   The largest key in the range.
+   * @return
+   *   False if the visitor stopped the scan; true otherwise.
+   */
+  @SuppressWarnings("unchecked")
+  private boolean scanHelper(Visitor<? super V> visitor, Node node, long prefix, int level,
+      long lo, long hi) {
+    boolean last = (level == widths.length - 1);
+    for (int i = node.next(0); i < node.fanout; i = node.next(i + 1)) {
+      long bits = (prefix << widths[level]) | i;
+      if (!overlaps(bits << below[level], below[level], lo, hi)) {
+        continue;
+      } // end of if loop
+      Object child = node.get(i);
+      if (last) {
+        if (!visitor.visit((V) child, bits)) {
+          return false;
+        } // end of if loop
+      } else if (!scanHelper(visitor, (Node) child, bits, level + 1, lo, hi)) {
+        return false;
+      } // end of if loop
+    } // end of for loop
+    return true;
+  } // scanHelper(Visitor, Node, long, int, long, long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Add a mapping from a bit pattern to a value.
+   *
+   * @param bits
+   *   The bit pattern (must fit in the depth of the tree).
+   * @param value
+   *   The value to store at the bit pattern, or null to remove the
+   *   mapping.
+   * @throws IndexOutOfBoundsException
+   *   If the bit pattern has bits set above the depth of the tree.
+   */
+  @Override
+  public void set(long bits, V value) {
+    if (!isValidBits(bits)) {
+      throw new IndexOutOfBoundsException("Invalid bit sequence");
+    } // end of if loop
+    if (value == null) {
+      remove(bits);
+      return;
+    } // end of if loop
+    if (root == null) {
+      root = newNode(0);
+    } // end of if loop
+    Node current = root;
+    int last = widths.length - 1;
+    for (int level = 0; level < last; level++) {
+      int i = index(bits, level);
+      Node next = (Node) current.get(i);
+      if (next == null) {
+        next = newNode(level + 1);
+        current.put(i, next);
+      } // end of if loop
+      current = next;
+    } // end of for loop
+    if (current.put(index(bits, last), value) == null) {
+      size++;
+    } // end of if loop
+  } // set(long, V)
+
+  /**
+   * Retrieve the value associated with a bit pattern, or null if there
+   * is none.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value, or null if the pattern has no value or does not fit
+   *   in the depth of the tree.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public V getOrNull(long bits) {
+    if (!isValidBits(bits)) {
+      return null;
+    } // end of if loop
+    Object current = root;
+    for (int level = 0; (level < widths.length) && (current != null); level++) {
+      current = ((Node) current).get(index(bits, level));
+    } // end of for loop
+    return (V) current;
+  } // getOrNull(long)
+
+  /**
+   * Remove the mapping for a bit pattern, unlinking every node left
+   * without children.
+   *
+   * @param bits
+   *   The bit pattern.
+   * @return
+   *   The value that was removed, or null if there was none.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public V remove(long bits) {
+    if (!isValidBits(bits) || (root == null)) {
+      return null;
+    } // end of if loop
+    Node[] path = new Node[widths.length];
+    path[0] = root;
+    for (int level = 1; level < widths.length; level++) {
+      path[level] = (Node) path[level - 1].get(index(bits, level - 1));
+      if (path[level] == null) {
+        return null;
+      } // end of if loop
+    } // end of for loop
+    int last = widths.length - 1;
+    V removed = (V) path[last].remove(index(bits, last));
+    if (removed == null) {
+      return null;
+    } // end of if loop
+    size--;
+    for (int level = last; (level > 0) && (path[level].count == 0); level--) {
+      path[level - 1].remove(index(bits, level - 1));
+    } // end of for loop
+    if (root.count == 0) {
+      root = null;
+    } // end of if loop
+    return removed;
+  } // remove(long)
+
+  /**
+   * Remove every mapping and prefix value from the tree.
+   */
+  @Override
+  public void clear() {
+    root = null;
+    size = 0;
+    super.clear();
+  } // clear()
+
+  /**
+   * Get the number of mappings in the tree.
+   *
+   * @return
+   *   The number of keys with values.
+   */
+  @Override
+  public long size() {
+    return size;
+  } // size()
+
+  /**
+   * Get the number of bits consumed by each node.
+   *
+   * @return
+   *   The stride given when the tree was created.
+   */
+  public int stride() {
+    return stride;
+  } // stride()
+
+  /**
+   * Visit the mappings whose keys fall in a range, in key order.
+   *
+   * @param visitor
+   *   The visitor, which may stop the scan by returning false.
+   * @param lo
+   *   The smallest key in the range.
+   * @param hi
+   *   The largest key in the range.
+   * @return
+   *   False if the visitor stopped the scan; true otherwise.
+   */
+  @Override
+  boolean scan(Visitor<? super V> visitor, long lo, long hi) {
+    return (root == null) || scanHelper(visitor, root, 0, 0, lo, hi);
+  } // scan(Visitor, long, long)
+
+  /**
+   * Count the nodes in the tree.
+   *
+   * @return
+   *   The number of interior nodes, each covering up to
+   *   <code>stride()</code> bits, and leaves.
+   */
+  @Override
+  public long nodeCount() {
+    return super.nodeCount() + measure(root, 0, false);
+  } // nodeCount()
+
+  /**
+   * Estimate the memory used by the structure of the tree, not
+   * counting the values themselves. Each node is charged for its slot
+   * array, which is smaller for sparse nodes.
+   *
+   * @return
+   *   The estimate, in bytes.
+   */
+  @Override
+  public long memoryEstimate() {
+    return super.memoryEstimate() + measure(root, 0, true);
+  } // memoryEstimate()
+
+  /**
+   * Count the nodes below and including one node, or estimate the
+   * bytes they use.
+   *
+   * @param node
+   *   The node, or null.
+   * @param level
+   *   The level of the node.
+   * @param bytes
+   *   True to estimate bytes; false to count nodes.
+   * @return
+   *   The number of nodes or bytes.
+   */
+  private long measure(Node node, int level, boolean bytes) {
+    if (node == null) {
+      return 0;
+    } // end of if loop
+    long total = bytes ? NODE_BYTES + (long) Integer.BYTES * node.slots.length : 1;
+    if (level < widths.length - 1) {
+      for (Object child : node.slots) {
+        total += measure((Node) child, level + 1, bytes);
+      } // end of for loop
+    } // end of if loop
+    return total;
+  } // measure(Node, int, boolean)
+
+  // +---------------+-----------------------------------------------
+  // | Inner classes |
+  // +---------------+
+
+  /**
+   * Nodes with many children. Nodes at the last level hold values in
+   * place of children.
+   */
+  private static final class Node {
+    /**
+     * The number of possible children.
+     */
+    final int fanout;
+
+    /**
+     * For sparse nodes, the indices of the children present; unused
+     * for dense nodes.
+     */
+    long bitmap;
+
+    /**
+     * For dense nodes, a slot per index; for sparse nodes, a slot per
+     * child present, in index order.
+     */
+    Object[] slots;
+
+    /**
+     * Whether the node uses the dense layout.
+     */
+    boolean dense;
+
+    /**
+     * The number of children present.
+     */
+    int count;
+
+    /**
+     * Create an empty node.
+     *
+     * @param size
+     *   The number of possible children.
+     * @param denseLayout
+     *   True for a dense node; false for a sparse one.
+     */
+    Node(int size, boolean denseLayout) {
+      this.fanout = size;
+      this.bitmap = 0;
+      this.slots = new Object[denseLayout ? size : 1];
+      this.dense = denseLayout;
+      this.count = 0;
+    } // Node(int, boolean)
+
+    /**
+     * Get a child.
+     *
+     * @param i
+     *   The index of the child.
+     * @return
+     *   The child, or null if there is none.
+     */
+    Object get(int i) {
+      if (dense) {
+        return slots[i];
+      } // end of if loop
+      long bit = 1L << i;
+      return ((bitmap & bit) == 0) ? null : slots[Long.bitCount(bitmap & (bit - 1))];
+    } // get(int)
+
+    /**
+     * Find the smallest index of a child present at or after an index.
+     *
+     * @param from
+     *   The index at which to start.
+     * @return
+     *   The index, or <code>fanout</code> if there is none.
+     */
+    int next(int from) {
+      if (dense) {
+        while ((from < fanout) && (slots[from] == null)) {
+          from++;
+        } // end of while loop
+        return from;
+      } // end of if loop
+      long rest = (from >= Long.SIZE) ? 0 : bitmap & (-1L << from);
+      return (rest == 0) ? fanout : Long.numberOfTrailingZeros(rest);
+    } // next(int)
+
+    /**
+     * Set a child. A sparse node that becomes half full switches to
+     * the dense layout.
+     *
+     * @param i
+     *   The index of the child.
+     * @param child
+     *   The child, which is not null.
+     * @return
+     *   The child it replaced, or null if there was none.
+     */
+    Object put(int i, Object child) {
+      if (dense) {
+        Object old = slots[i];
+        slots[i] = child;
+        count += (old == null) ? 1 : 0;
+        return old;
+      } // end of if loop
+      long bit = 1L << i;
+      int slot = Long.bitCount(bitmap & (bit - 1));
+      if ((bitmap & bit) != 0) {
+        Object old = slots[slot];
+        slots[slot] = child;
+        return old;
+      } // end of if loop
+      if (count == slots.length) {
+        slots = Arrays.copyOf(slots, count * 2);
+      } // end of if loop
+      System.arraycopy(slots, slot, slots, slot + 1, count - slot);
+      slots[slot] = child;
+      bitmap |= bit;
+      count++;
+      if (2 * count >= fanout) {
+        Object[] all = new Object[fanout];
+        for (int j = next(0), k = 0; j < fanout; j = next(j + 1), k++) {
+          all[j] = slots[k];
+        } // end of for loop
+        slots = all;
+        dense = true;
+        bitmap = 0;
+      } // end of if loop
+      return null;
+    } // put(int, Object)
+
+    /**
+     * Remove a child. Nodes keep their layout as they empty.
+     *
+     * @param i
+     *   The index of the child.
+     * @return
+     *   The child that was removed, or null if there was none.
+     */
+    Object remove(int i) {
+      if (dense) {
+        Object old = slots[i];
+        slots[i] = null;
+        count -= (old == null) ? 0 : 1;
+        return old;
+      } // end of if loop
+      long bit = 1L << i;
+      if ((bitmap & bit) == 0) {
+        return null;
+      } // end of if loop
+      int slot = Long.bitCount(bitmap & (bit - 1));
+      Object old = slots[slot];
+      System.arraycopy(slots, slot + 1, slots, slot, count - slot - 1);
+      slots[--count] = null;
+      bitmap &= ~bit;
+      return old;
+    } // remove(int)
+  } // class Node
+} // class StrideBitTree
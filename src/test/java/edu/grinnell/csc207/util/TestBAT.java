@@ -2,7 +2,14 @@ package edu.grinnell.csc207.util;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 
 import org.junit.jupiter.api.Test;
 
@@ -21,6 +28,19 @@ public class TestBAT {
   // | Helpers |
   // +---------+
 
+  /**
+   * Reload the tables with the given ASCII-to-Braille mappings and the
+   * default Braille-to-ASCII and Braille-to-Unicode mappings.
+   *
+   * @param a2b
+   *   The ASCII-to-Braille mappings, in CSV format.
+   */
+  static void reload(String a2b) {
+    BrailleAsciiTables.reload(new ByteArrayInputStream(a2b.getBytes()),
+        new ByteArrayInputStream(BrailleAsciiTables.b2a.getBytes()),
+        new ByteArrayInputStream(BrailleAsciiTables.b2u.getBytes()));
+  } // reload(String)
+
   // +-------+-------------------------------------------------------
   // | Setup |
   // +-------+
@@ -29,4 +49,162 @@ public class TestBAT {
   // | Tests |
   // +-------+
 
+  /**
+   * Every letter should survive a round trip through Braille.
+   */
+  @Test
+  public void testRoundTrip() {
+    for (char letter = 'A'; letter <= 'Z'; letter++) {
+      String bits = BrailleAsciiTables.toBraille(letter);
+      assertEquals(bits, BrailleAsciiTables.toBraille(Character.toLowerCase(letter)));
+      assertEquals(String.valueOf(letter), BrailleAsciiTables.toAscii(bits));
+    } // for
+    assertEquals("000000", BrailleAsciiTables.toBraille(' '));
+    assertEquals("HE ", BrailleAsciiTables.toAscii("110010100010000000"));
+  } // testRoundTrip()
+
+  /**
+   * Cells should map to the Braille Patterns block.
+   */
+  @Test
+  public void testUnicode() {
+    assertEquals("\u2800", BrailleAsciiTables.toUnicode("000000"));
+    assertEquals("\u2801", BrailleAsciiTables.toUnicode("100000"));
+    assertEquals("\u283F", BrailleAsciiTables.toUnicode("111111"));
+  } // testUnicode()
+
+  /**
+   * Characters and cells without translations should be rejected.
+   */
+  @Test
+  public void testMissing() {
+    assertThrows(IndexOutOfBoundsException.class, () -> BrailleAsciiTables.toBraille('!'));
+    assertThrows(IndexOutOfBoundsException.class, () -> BrailleAsciiTables.toBraille('\u2800'));
+    assertThrows(IndexOutOfBoundsException.class, () -> BrailleAsciiTables.toAscii("111111"));
+    assertThrows(IndexOutOfBoundsException.class, () -> BrailleAsciiTables.toAscii("11111"));
+    assertThrows(IndexOutOfBoundsException.class, () -> BrailleAsciiTables.toUnicode("11a111"));
+    assertEquals(-1, BrailleAsciiTables.cellForOrDefault('!', -1));
+    assertEquals(-1, BrailleAsciiTables.cellForOrDefault('\u2800', -1));
+    assertEquals(BrailleAsciiTables.cellFor('a'), BrailleAsciiTables.cellForOrDefault('a', -1));
+    assertEquals('?', BrailleAsciiTables.asciiForOrDefault(0b111111, '?'));
+    assertEquals('A', BrailleAsciiTables.asciiForOrDefault(0b100000, '?'));
+  } // testMissing()
+
+  /**
+   * Bulk conversions should agree with single-character conversions.
+   */
+  @Test
+  public void testBulk() {
+    char[] letters = "xHello Worldx".toCharArray();
+    byte[] cells = new byte[letters.length];
+    BrailleAsciiTables.toBraille(letters, 1, 11, cells, 2);
+    assertEquals(Integer.parseInt(BrailleAsciiTables.toBraille('H'), 2), cells[2]);
+    char[] unicode = new char[11];
+    BrailleAsciiTables.toUnicode(cells, 2, 11, unicode, 0);
+    assertEquals(BrailleAsciiTables.toUnicode(BrailleAsciiTables.toBraille('W')),
+        String.valueOf(unicode[6]));
+    char[] ascii = new char[11];
+    BrailleAsciiTables.toAscii(cells, 2, 11, ascii, 0);
+    assertArrayEquals("HELLO WORLD".toCharArray(), ascii);
+    assertThrows(IndexOutOfBoundsException.class,
+        () -> BrailleAsciiTables.toBraille("a!".toCharArray(), 0, 2, new byte[2], 0));
+    assertThrows(IndexOutOfBoundsException.class,
+        () -> BrailleAsciiTables.toUnicode(new byte[4], 2, 3, new char[3], 0));
+  } // testBulk()
+
+  /**
+   * Packed cells should round-trip through every representation.
+   */
+  @Test
+  public void testPackedCells() {
+    String text = "PACKED BRAILLE CELLS SPAN SEVERAL WORDS";
+    BrailleCells cells = BrailleAsciiTables.toCells(text);
+    assertEquals(text.length(), cells.length());
+    assertEquals(4, cells.wordCount());
+    assertEquals(text, BrailleAsciiTables.toAscii(cells));
+    assertEquals(cells, BrailleCells.fromBits(cells.toBits()));
+    assertEquals(cells, BrailleCells.of(cells.toByteArray(), 0, cells.length()));
+    assertEquals(BrailleAsciiTables.toBraille('S'), BrailleAsciiTables.cellBits(cells.get(21)));
+    assertEquals(BrailleAsciiTables.toUnicode(BrailleAsciiTables.toBraille('P')),
+        BrailleAsciiTables.toUnicode(cells).substring(0, 1));
+  } // testPackedCells()
+
+  /**
+   * Streaming conversions should match the per-character conversions,
+   * including across buffer boundaries.
+   *
+   * @throws IOException
+   *   If the in-memory streams fail.
+   */
+  @Test
+  public void testTranscode() throws IOException {
+    String text = "the quick brown fox\njumps over the lazy dog\n".repeat(500);
+    StringWriter braille = new StringWriter();
+    BrailleTranscoder.transcode(new StringReader(text), braille,
+        BrailleTranscoder.Target.BRAILLE);
+    assertEquals(BrailleAsciiTables.toBraille('t'), braille.toString().substring(0, 6));
+    StringWriter ascii = new StringWriter();
+    BrailleTranscoder.transcode(new StringReader(braille.toString()), ascii,
+        BrailleTranscoder.Target.ASCII);
+    assertEquals(text.toUpperCase(), ascii.toString());
+    assertThrows(IndexOutOfBoundsException.class,
+        () -> BrailleTranscoder.transcode(new StringReader("10000"), new StringWriter(),
+            BrailleTranscoder.Target.ASCII));
+  } // testTranscode()
+
+  /**
+   * Conversion statistics should count each character or cell looked
+   * up and measure the trees behind the tables.
+   */
+  @Test
+  public void testStats() {
+    BrailleAsciiTables.setStatistics(true);
+    BitTreeStats stats = BrailleAsciiTables.stats();
+    assertEquals(1, stats.getLoads());
+    stats.reset();
+    BrailleAsciiTables.toAscii(BrailleAsciiTables.toCells("BRAILLE"));
+    assertEquals(-1, BrailleAsciiTables.cellForOrDefault((char) 300, -1));
+    assertThrows(IndexOutOfBoundsException.class, () -> BrailleAsciiTables.toBraille('~'));
+    assertEquals(14, stats.getHits());
+    assertEquals(2, stats.getMisses());
+    assertTrue(stats.getLeaves() > 64);
+    assertTrue(stats.getMemoryEstimate() > 0);
+    stats.reset();
+    for (byte bad : new byte[] {-1, 64}) {
+      IndexOutOfBoundsException e = assertThrows(IndexOutOfBoundsException.class,
+          () -> BrailleAsciiTables.toAscii(new byte[] {0b100000, bad}, 0, 2, new char[2], 0));
+      assertEquals("No value found at path for cell 1", e.getMessage());
+    } // for
+    assertEquals(2, stats.getHits());
+    assertEquals(2, stats.getMisses());
+    BrailleAsciiTables.setStatistics(false);
+    assertNull(BrailleAsciiTables.stats());
+  } // testStats()
+
+  /**
+   * Reloading should swap in the new tables, and a malformed reload
+   * should leave the current tables in place.
+   */
+  @Test
+  public void testReload() {
+    try {
+      reload(BrailleAsciiTables.a2b.replace("01000001,100000", "01000001,111111"));
+      assertEquals("111111", BrailleAsciiTables.toBraille('A'));
+      assertEquals("110000", BrailleAsciiTables.toBraille('B'));
+      assertEquals("A", BrailleAsciiTables.toAscii("100000"));
+      for (String bad : new String[] {"1000001", "10000", "10x000"}) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> reload(BrailleAsciiTables.a2b.replace("01000001,100000", "01000001," + bad)));
+        assertTrue(e.getMessage().contains(bad), e.getMessage());
+        assertEquals("111111", BrailleAsciiTables.toBraille('A'));
+      } // for
+      assertThrows(IllegalArgumentException.class, () -> reload("0100000,100000\n"));
+      assertEquals("111111", BrailleAsciiTables.toBraille('A'));
+    } finally {
+      reload(BrailleAsciiTables.a2b);
+    } // try/finally
+    assertEquals("100000", BrailleAsciiTables.toBraille('A'));
+    assertEquals("\u2801", BrailleAsciiTables.toUnicode("100000"));
+  } // testReload()
+
 } // class TestBAT
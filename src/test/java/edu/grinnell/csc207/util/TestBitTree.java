@@ -2,9 +2,36 @@ package edu.grinnell.csc207.util;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 
 /**
@@ -21,6 +48,40 @@ public class TestBitTree {
   // | Helpers |
   // +---------+
 
+  /**
+   * Some of the conversions from braille to ASCII.
+   */
+  static final String B2A = "100000,A\n110000,B\n100100,C\n010111,W\n000000, \n";
+
+  /**
+   * Dump a tree to a string.
+   *
+   * @param tree
+   *   The tree to dump.
+   * @return
+   *   The CSV form of the tree.
+   */
+  static String dump(BitTree<?> tree) {
+    StringWriter out = new StringWriter();
+    PrintWriter pen = new PrintWriter(out);
+    tree.dump(pen);
+    pen.flush();
+    return out.toString();
+  } // dump(BitTree)
+
+  /**
+   * Load the sample braille table into a tree.
+   *
+   * @param tree
+   *   The tree to fill.
+   * @return
+   *   The same tree.
+   */
+  static <V> BitTree<V> load(BitTree<V> tree) {
+    tree.load(new ByteArrayInputStream(B2A.getBytes()));
+    return tree;
+  } // load(BitTree)
+
   // +-------+-------------------------------------------------------
   // | Setup |
   // +-------+
@@ -29,4 +90,743 @@ public class TestBitTree {
   // | Tests |
   // +-------+
 
+  /**
+   * Bit patterns and bit strings should name the same keys.
+   */
+  @Test
+  public void testLongKeys() {
+    BitTree<String> tree = new BitTree<>(5);
+    tree.set("01111", "Fifteen");
+    tree.set(0b10000L, "Sixteen");
+    assertEquals("Fifteen", tree.get(0b01111L));
+    assertEquals("Sixteen", tree.get("10000"));
+    assertThrows(IndexOutOfBoundsException.class, () -> tree.get(0b100000L));
+    assertThrows(IndexOutOfBoundsException.class, () -> tree.get("0011a"));
+    assertThrows(IndexOutOfBoundsException.class, () -> tree.get(0b00111L));
+  } // testLongKeys()
+
+  /**
+   * Trees of depth 64 should use every bit of the pattern.
+   */
+  @Test
+  public void testFullWidthKeys() {
+    BitTree<String> tree = new BitTree<>(64);
+    tree.set(-1L, "ones");
+    tree.set(Long.MIN_VALUE, "top");
+    assertEquals("ones", tree.get("1".repeat(64)));
+    assertEquals("top", tree.get("1" + "0".repeat(63)));
+  } // testFullWidthKeys()
+
+  /**
+   * Dense trees should behave just like linked trees.
+   */
+  @Test
+  public void testDense() {
+    BitTree<String> linked = load(new BitTree<>(6));
+    BitTree<String> dense = load(new DenseBitTree<>(6));
+    assertEquals(dump(linked), dump(dense));
+    assertEquals("W", dense.get("010111"));
+    assertThrows(IndexOutOfBoundsException.class, () -> dense.get("111111"));
+    assertTrue(BitTree.create(6) instanceof DenseBitTree);
+  } // testDense()
+
+  /**
+   * Multi-bit trees should agree with binary trees for every stride
+   * and layout, including strides that do not divide the depth.
+   */
+  @Test
+  public void testStride() {
+    Random random = new Random(207);
+    long[] keys = new long[2000];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = random.nextLong();
+    } // for
+    for (int stride = 1; stride <= StrideBitTree.MAX_STRIDE; stride++) {
+      for (boolean adaptive : new boolean[] {true, false}) {
+        BitTree<String> expected = new PatriciaBitTree<>(64);
+        BitTree<String> tree =
+            new StrideBitTree<>(64, stride, adaptive, BitTreeCodec.strings());
+        for (int i = 0; i < keys.length; i++) {
+          expected.set(keys[i], "v" + i);
+          tree.set(keys[i], "v" + i);
+        } // for
+        assertEquals(dump(expected), dump(tree));
+        assertEquals("v7", tree.range(keys[7], keys[7]).findFirst().get().getValue());
+        for (int i = 0; i < keys.length; i += 2) {
+          assertEquals("v" + i, tree.remove(keys[i]));
+          expected.remove(keys[i]);
+        } // for
+        assertEquals(keys.length / 2, tree.size());
+        assertEquals(dump(expected), dump(tree));
+        assertNull(tree.getOrNull(keys[0]));
+        assertEquals("v1", tree.get(keys[1]));
+      } // for
+    } // for
+    assertEquals(dump(load(new BitTree<>(6))), dump(load(new StrideBitTree<>(6, 4))));
+    assertThrows(IllegalArgumentException.class, () -> new StrideBitTree<String>(8, 7));
+  } // testStride()
+
+  /**
+   * Path-compressed trees should behave just like linked trees, even
+   * for deep, sparse keys.
+   */
+  @Test
+  public void testPatricia() {
+    assertEquals(dump(load(new BitTree<>(6))), dump(load(new PatriciaBitTree<>(6))));
+    Random random = new Random(207);
+    for (int depth : new int[] {32, 64}) {
+      BitTree<String> linked = new BitTree<>(depth);
+      BitTree<String> compressed = new PatriciaBitTree<>(depth);
+      for (int i = 0; i < 500; i++) {
+        long key = random.nextLong() >>> (Long.SIZE - depth);
+        linked.set(key, "v" + i);
+        compressed.set(key, "v" + i);
+        assertEquals("v" + i, compressed.get(key));
+      } // for
+      assertEquals(dump(linked), dump(compressed));
+      assertThrows(IndexOutOfBoundsException.class, () -> compressed.get(0));
+    } // for
+  } // testPatricia()
+
+  /**
+   * Off-heap trees should behave just like linked trees.
+   */
+  @Test
+  public void testOffHeap() {
+    assertEquals(dump(load(new BitTree<>(6))), dump(load(new OffHeapBitTree<>(6))));
+    Random random = new Random(207);
+    BitTree<String> linked = new BitTree<>(40);
+    BitTree<String> offHeap = new OffHeapBitTree<>(40);
+    for (int i = 0; i < 2000; i++) {
+      long key = random.nextLong() >>> 24;
+      linked.set(key, "v" + i);
+      offHeap.set(key, "v" + i);
+    } // for
+    assertEquals(dump(linked), dump(offHeap));
+    assertThrows(IndexOutOfBoundsException.class, () -> offHeap.get(0));
+  } // testOffHeap()
+
+  /**
+   * Threads writing disjoint keys at once should not lose each
+   * other's mappings. The writers run as tasks, so that a failed
+   * assertion in one of them fails the test.
+   *
+   * @throws Exception
+   *   If the test is interrupted or a writer fails.
+   */
+  @Test
+  public void testConcurrent() throws Exception {
+    BitTree<String> tree = new ConcurrentBitTree<>(20);
+    int writers = 4;
+    ExecutorService executor = Executors.newFixedThreadPool(writers);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < writers; t++) {
+        int first = t;
+        futures.add(executor.submit(() -> {
+          for (int key = first; key < 1 << 16; key += writers) {
+            tree.set(key, "v" + key);
+            assertEquals("v" + key, tree.get(key));
+          } // for
+        }));
+      } // for
+      for (Future<?> future : futures) {
+        future.get();
+      } // for
+    } finally {
+      executor.shutdownNow();
+    } // try/finally
+    for (int key = 0; key < 1 << 16; key++) {
+      assertEquals("v" + key, tree.get(key));
+    } // for
+    assertEquals(dump(load(new BitTree<>(6))), dump(load(new ConcurrentBitTree<>(6))));
+  } // testConcurrent()
+
+  /**
+   * Frozen trees should be immutable copies, and updating one should
+   * leave the original untouched.
+   */
+  @Test
+  public void testFrozen() {
+    BitTree<String> tree = load(new BitTree<>(6));
+    FrozenBitTree<String> frozen = tree.freeze();
+    assertEquals(dump(tree), dump(frozen));
+    assertSame(frozen, frozen.freeze());
+    assertThrows(UnsupportedOperationException.class, () -> frozen.set("000000", "x"));
+    tree.set("100000", "changed");
+    assertEquals("A", frozen.get("100000"));
+    FrozenBitTree<String> updated = frozen.withSet("100000", "a").withSet("111111", "?");
+    assertEquals("a", updated.get("100000"));
+    assertEquals("?", updated.get("111111"));
+    assertEquals("A", frozen.get("100000"));
+    assertThrows(IndexOutOfBoundsException.class, () -> frozen.get("111111"));
+    assertEquals(dump(new BitTree<>(64)), dump(new BitTree<String>(64).freeze()));
+
+    // Prefix values should survive freezing, compacting, and updates.
+    for (BitTree<String> routes : List.of(load(new BitTree<String>(6)),
+        load(new StrideBitTree<String>(6, 4)), load(new ConcurrentBitTree<String>(6)))) {
+      routes.setPrefix("", "default");
+      routes.setPrefix("1010", "P");
+      routes.setPrefix("11111", "Q");
+      assertEquals("P", routes.longestPrefixMatch(0b101010, 6));
+      for (FrozenBitTree<String> copy : List.of(routes.freeze(), routes.compact())) {
+        assertEquals(dump(routes), dump(copy));
+        assertEquals("P", copy.longestPrefixMatch(0b101010, 6));
+        assertEquals("Q", copy.longestPrefixMatch(0b111110, 6));
+        assertEquals("default", copy.longestPrefixMatch(0b000001, 6));
+        assertEquals("W", copy.longestPrefixMatch(0b010111, 6));
+        FrozenBitTree<String> changed = copy.withSet("101011", "x").withRemoved("100000");
+        assertEquals("x", changed.longestPrefixMatch(0b101011, 6));
+        assertEquals("P", changed.longestPrefixMatch(0b101010, 6));
+        assertEquals("default", changed.longestPrefixMatch(0b100000, 6));
+        assertEquals("P", changed.withRemoved("101011").longestPrefixMatch(0b101011, 6));
+      } // for
+    } // for
+  } // testFrozen()
+
+  /**
+   * Every kind of tree should enumerate, range-scan, and prefix-scan
+   * its mappings in key order, sequentially or in parallel.
+   */
+  @Test
+  public void testScans() {
+    List<BitTree<String>> trees = List.of(new BitTree<String>(6), new DenseBitTree<>(6),
+        new PatriciaBitTree<>(6), new OffHeapBitTree<>(6), new ConcurrentBitTree<>(6),
+        load(new BitTree<String>(6)).freeze());
+    for (BitTree<String> tree : trees) {
+      if (!(tree instanceof FrozenBitTree)) {
+        load(tree);
+      } // if
+      List<String> values = new ArrayList<>();
+      for (Map.Entry<Long, String> entry : tree) {
+        values.add(entry.getValue());
+      } // for
+      assertEquals(List.of(" ", "W", "A", "C", "B"), values);
+      assertEquals(List.of("W", "A", "C"),
+          tree.range("010111", "100100").map(Map.Entry::getValue).collect(Collectors.toList()));
+      assertEquals(List.of("A", "C", "B"),
+          tree.prefix("1").map(Map.Entry::getValue).collect(Collectors.toList()));
+      assertEquals(List.of(0b100000L, 0b100100L),
+          tree.prefix(0b100, 3).map(Map.Entry::getKey).collect(Collectors.toList()));
+      assertEquals(5, tree.prefix("").count());
+      assertEquals(0, tree.range(0b110001, 0b111111).count());
+      assertEquals(0, tree.range(0b100001, 0b100000).count());
+      assertEquals(values,
+          tree.stream().parallel().map(Map.Entry::getValue).collect(Collectors.toList()));
+    } // for
+    BitTree<String> wide = new PatriciaBitTree<>(64);
+    wide.set(-1L, "top");
+    wide.set(1L, "bottom");
+    wide.set(Long.MIN_VALUE, "middle");
+    assertEquals(List.of("middle", "top"),
+        wide.prefix("1").map(Map.Entry::getValue).collect(Collectors.toList()));
+    assertEquals(List.of("bottom", "middle", "top"),
+        wide.stream().parallel().map(Map.Entry::getValue).collect(Collectors.toList()));
+    long[] sum = {0};
+    BitTree<String> big = new BitTree<>(20);
+    for (int key = 0; key < 1 << 20; key += 7) {
+      big.set(key, "v");
+      sum[0] += key;
+    } // for
+    assertEquals(sum[0], big.stream().parallel().mapToLong(Map.Entry::getKey).sum());
+
+    // Advancing one mapping at a time crosses batches without losing or
+    // repeating any, and the rest can then be visited at once.
+    long[] seen = {0, 0};
+    Iterator<Map.Entry<Long, String>> entries = big.iterator();
+    for (int i = 0; i < 3 * 64 + 5; i++) {
+      seen[0] += entries.next().getKey();
+      seen[1]++;
+    } // for
+    entries.forEachRemaining((entry) -> {
+      seen[0] += entry.getKey();
+      seen[1]++;
+    });
+    assertEquals(sum[0], seen[0]);
+    assertEquals(big.size(), seen[1]);
+  } // testScans()
+
+  /**
+   * Longest-prefix matching should find the deepest value along a key,
+   * whether it comes from a prefix or a full mapping.
+   */
+  @Test
+  public void testPrefixes() {
+    for (BitTree<String> tree : List.of(new BitTree<String>(8), new DenseBitTree<String>(8),
+        new PatriciaBitTree<String>(8), new ConcurrentBitTree<String>(8))) {
+      assertNull(tree.longestPrefixMatch("10110000"));
+      tree.setPrefix("", "default");
+      tree.setPrefix("1011", "1011/4");
+      tree.setPrefix(0b10, 2, "10/2");
+      tree.set("10110001", "exact");
+      assertEquals("exact", tree.longestPrefixMatch("10110001"));
+      assertEquals("1011/4", tree.longestPrefixMatch("10110000"));
+      assertEquals("1011/4", tree.longestPrefixMatch(0b10111, 5));
+      assertEquals("10/2", tree.longestPrefixMatch("10011111"));
+      assertEquals("default", tree.longestPrefixMatch("0"));
+      assertEquals("exact\n", dump(tree).replace("\r", "").replaceAll("[01]+,", ""));
+      assertThrows(IndexOutOfBoundsException.class, () -> tree.get("10110000"));
+      assertThrows(IndexOutOfBoundsException.class, () -> tree.setPrefix(0b100, 2, "x"));
+      tree.setPrefix("1011", null);
+      assertEquals("10/2", tree.longestPrefixMatch("10110000"));
+    } // for
+    assertThrows(UnsupportedOperationException.class,
+        () -> new BitTree<String>(4).freeze().setPrefix("1", "x"));
+
+    // Clearing prefixes should neither add branches nor leave them.
+    BitTree<String> linked = new BitTree<>(16);
+    for (int i = 0; i < 1000; i++) {
+      linked.setPrefix(i, 10, null);
+    } // for
+    assertEquals(0, linked.nodeCount());
+    linked.setPrefix("1010", "1010/4");
+    linked.setPrefix("", "default");
+    assertEquals(5, linked.nodeCount());
+    linked.setPrefix("1010", null);
+    assertEquals(1, linked.nodeCount());
+    linked.setPrefix("", null);
+    assertEquals(0, linked.nodeCount());
+    linked.set(0xA000, "x");
+    long nodes = linked.nodeCount();
+    linked.setPrefix("1010", "1010/4");
+    linked.setPrefix("1010", null);
+    assertEquals(nodes, linked.nodeCount());
+    assertEquals("x", linked.longestPrefixMatch(0xA000, 16));
+  } // testPrefixes()
+
+  /**
+   * Exception-free lookups should report misses and invalid keys
+   * without throwing.
+   */
+  @Test
+  public void testLookups() {
+    for (BitTree<String> tree : List.of(new BitTree<String>(6), new DenseBitTree<String>(6),
+        new PatriciaBitTree<String>(6), new OffHeapBitTree<String>(6),
+        new ConcurrentBitTree<String>(6), load(new BitTree<String>(6)).freeze())) {
+      if (!(tree instanceof FrozenBitTree)) {
+        load(tree);
+      } // if
+      assertEquals("W", tree.getOrNull("010111"));
+      assertNull(tree.getOrNull(0b111111));
+      assertNull(tree.getOrNull(1L << 6));
+      assertEquals("?", tree.getOrDefault(0b111111, "?"));
+      assertEquals("A", tree.getOrDefault(0b100000, "?"));
+      assertTrue(tree.contains("000000"));
+      assertTrue(!tree.contains(0b000001) && !tree.contains(-1L));
+    } // for
+    IntBitTree numbers = new IntBitTree(4);
+    numbers.setInt(3, -7);
+    assertEquals(-7, numbers.getIntOrDefault(3, 0));
+    assertEquals(99, numbers.getIntOrDefault(4, 99));
+    assertEquals(-7, numbers.findInt(3).getAsInt());
+    assertTrue(numbers.findInt(4).isEmpty() && numbers.findInt(16).isEmpty());
+    assertNull(numbers.getOrNull(4));
+    CharBitTree letters = (CharBitTree) load(new CharBitTree(6));
+    assertEquals('W', letters.getCharOrDefault(0b010111, '?'));
+    assertEquals('?', letters.getCharOrDefault(0b111111, '?'));
+  } // testLookups()
+
+  /**
+   * Removing mappings should update the size, prune emptied nodes,
+   * and leave the other mappings in place.
+   */
+  @Test
+  public void testRemove() {
+    for (BitTree<String> tree : List.of(new BitTree<String>(6), new DenseBitTree<String>(6),
+        new PatriciaBitTree<String>(6), new OffHeapBitTree<String>(6),
+        new ConcurrentBitTree<String>(6), new StrideBitTree<String>(6))) {
+      assertTrue(tree.isEmpty());
+      load(tree);
+      assertEquals(5, tree.size());
+      tree.set("100000", "a");
+      assertEquals(5, tree.size());
+      assertEquals("a", tree.remove("100000"));
+      assertNull(tree.remove(0b100000));
+      assertNull(tree.remove(1L << 6));
+      tree.set(0b110000, null);
+      assertEquals(3, tree.size());
+      assertEquals("000000, \n010111,W\n100100,C\n", dump(tree).replace("\r", ""));
+      tree.set("110000", "B");
+      assertEquals("B", tree.get(0b110000));
+      assertEquals(4, tree.size());
+      tree.clear();
+      assertEquals(0, tree.size());
+      assertEquals("", dump(tree));
+      load(tree);
+      assertEquals("W", tree.get("010111"));
+    } // for
+
+    // Pruning should keep interior nodes that hold prefix values.
+    BitTree<String> linked = new BitTree<>(4);
+    linked.setPrefix("10", "10/2");
+    linked.set("1011", "x");
+    assertEquals("x", linked.remove("1011"));
+    assertEquals("10/2", linked.longestPrefixMatch("1011"));
+    linked.setPrefix("10", null);
+    linked.set("1011", "y");
+    assertEquals("y", linked.remove("1011"));
+    assertTrue(linked.isEmpty());
+
+    // Freed off-heap nodes and values should be reused.
+    OffHeapBitTree<String> offHeap = new OffHeapBitTree<>(16);
+    offHeap.set(0xFFFF, "a");
+    long used = offHeap.offHeapBytes();
+    assertEquals("a", offHeap.remove(0xFFFF));
+    offHeap.set(0x0000, "b");
+    assertEquals(used, offHeap.offHeapBytes());
+    for (int i = 0; i < 100; i++) {
+      offHeap.set(0x0000, "c" + (i % 10));
+      offHeap.set(0x0001, "d" + (i % 10));
+    } // for
+    assertEquals(used + 2 * (4 + 2), offHeap.offHeapBytes());
+    assertEquals("c9", offHeap.get(0x0000));
+    assertEquals("d9", offHeap.get(0x0001));
+
+    FrozenBitTree<String> frozen = load(new BitTree<String>(6)).freeze();
+    FrozenBitTree<String> smaller = frozen.withRemoved("010111");
+    assertEquals(5, frozen.size());
+    assertEquals(4, smaller.size());
+    assertNull(smaller.getOrNull("010111"));
+    assertEquals("W", frozen.get("010111"));
+    assertSame(smaller, smaller.withRemoved("010111"));
+    assertEquals(5, smaller.withSet("010111", "W").size());
+    assertThrows(UnsupportedOperationException.class, () -> frozen.remove("010111"));
+  } // testRemove()
+
+  /**
+   * Loading should share one instance of each distinct value and
+   * report how many duplicates it eliminated.
+   */
+  @Test
+  public void testInterning() {
+    BitTree<String> tree = new BitTree<>(8);
+    assertNull(tree.valuePool());
+    tree.load(new ByteArrayInputStream(
+        "01000001,100000\n01100001,100000\n01000010,110000\n01100010,110000\n".getBytes()));
+    assertSame(tree.get("01000001"), tree.get("01100001"));
+    assertEquals(2, tree.valuePool().distinct());
+    assertEquals(4, tree.valuePool().interned());
+    assertEquals(2, tree.valuePool().duplicates());
+    assertEquals("Interned 4 values: 2 distinct, 2 duplicates (50.0%)",
+        tree.valuePool().report());
+    tree.load(new ByteArrayInputStream("01000011,100000\n".getBytes()));
+    assertSame(tree.get("01000001"), tree.get("01000011"));
+    assertEquals(2, tree.valuePool().distinct());
+    assertNull(tree.freeze().withSet("01000001", "x").valuePool());
+    tree.clear();
+    assertNull(tree.valuePool());
+
+    BitTree<String> plain = new BitTree<>(8);
+    plain.setInterning(false);
+    plain.load(new ByteArrayInputStream("01000001,100000\n01100001,100000\n".getBytes()));
+    assertNull(plain.valuePool());
+    assertEquals(plain.get("01000001"), plain.get("01100001"));
+    assertTrue(plain.get("01000001") != plain.get("01100001"));
+  } // testInterning()
+
+  /**
+   * Compacting a tree should share identical subtrees without changing
+   * any mapping.
+   */
+  @Test
+  public void testCompact() {
+    BitTree<String> small = new BitTree<>(2);
+    small.load(new ByteArrayInputStream("00,a\n01,b\n10,a\n11,b\n".getBytes()));
+    FrozenBitTree<String> frozen = small.freeze();
+    FrozenBitTree<String> compact = frozen.compact();
+    assertEquals(7, frozen.nodeCount());
+    assertEquals(4, compact.nodeCount());
+    assertEquals(3, compact.eliminatedNodes());
+    assertEquals(0, frozen.eliminatedNodes());
+    assertEquals(dump(small), dump(compact));
+    FrozenBitTree<String> changed = compact.withSet("11", "c");
+    assertEquals("b", changed.get("01"));
+    assertEquals("c", changed.get("11"));
+    assertEquals("b", compact.get("11"));
+
+    BitTree<String> a2b = BitTree.create(8);
+    a2b.load(new ByteArrayInputStream(BrailleAsciiTables.a2b.getBytes()));
+    FrozenBitTree<String> shared = a2b.compact();
+    assertTrue(shared.eliminatedNodes() > 0);
+    assertEquals(a2b.freeze().nodeCount() - shared.eliminatedNodes(), shared.nodeCount());
+    assertEquals(dump(a2b), dump(shared));
+  } // testCompact()
+
+  /**
+   * The node view should follow the same paths as lookups, with values
+   * at the leaves and prefix values at the branches, and refuse changes.
+   */
+  @Test
+  public void testNodeView() {
+    BitTree<String> tree = load(new BitTree<>(6));
+    tree.setPrefix("10", "P");
+    BitTreeNode<String> node = tree.root();
+    assertNull(node.getValue());
+    node = node.getRight();
+    assertNull(node.getValue());
+    node = node.getLeft();
+    assertEquals("P", node.getValue());
+    for (char bit : "0100".toCharArray()) {
+      node = (bit == '0') ? node.getLeft() : node.getRight();
+    } // for
+    assertEquals("C", node.getValue());
+    assertNull(node.getLeft());
+    assertNull(node.getRight());
+    assertNull(tree.root().getLeft().getRight().getRight());
+    BitTreeNode<String> leaf = node;
+    assertThrows(UnsupportedOperationException.class, () -> leaf.setValue("D"));
+    assertThrows(UnsupportedOperationException.class, () -> leaf.setLeft(null));
+    tree.set("100100", "D");
+    assertEquals("D", leaf.getValue());
+    tree.clear();
+    assertNull(tree.root());
+  } // testNodeView()
+
+  /**
+   * Statistics should count counted lookups and loads, measure the
+   * shape of every kind of tree, and be readable through JMX.
+   *
+   * @throws Exception
+   *   If the MBean server cannot be read.
+   */
+  @Test
+  public void testStats() throws Exception {
+    BitTree<String> tree = new BitTree<>(6);
+    assertNull(tree.stats());
+    tree.setStatistics(true);
+    BitTreeStats stats = tree.stats();
+    load(tree);
+    assertEquals(1, stats.getLoads());
+    assertTrue(stats.getLoadNanos() > 0);
+    assertEquals("C", tree.get("100100"));
+    assertEquals("?", tree.getOrDefault(0b111111, "?"));
+    assertTrue(!tree.contains("111000"));
+    assertNull(tree.getOrNull(0b111111));
+    assertEquals(1, stats.getHits());
+    assertEquals(2, stats.getMisses());
+    assertEquals(5, stats.getLeaves());
+    assertEquals(tree.freeze().nodeCount(), stats.getNodes());
+    assertEquals((stats.getNodes() - 5) * BitTree.BRANCH_BYTES, stats.getMemoryEstimate());
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = stats.register("testStats");
+    assertEquals(1L, server.getAttribute(name, "Hits"));
+    assertEquals(5L, server.getAttribute(name, "Leaves"));
+    server.invoke(name, "reset", null, null);
+    assertEquals(0, stats.getMisses());
+    assertThrows(IllegalArgumentException.class, () -> stats.register("testStats"));
+    server.unregisterMBean(name);
+    tree.setStatistics(false);
+    assertNull(tree.stats());
+
+    IntBitTree ints = new IntBitTree(6);
+    ints.setStatistics(true);
+    ints.setInt(5, 50);
+    assertEquals(50, ints.getInt(5));
+    assertEquals(50, (int) ints.get(5));
+    assertEquals(-1, ints.getIntOrDefault(6, -1));
+    assertTrue(ints.findInt(5).isPresent());
+    assertTrue(!ints.contains(7));
+    assertThrows(IndexOutOfBoundsException.class, () -> ints.getInt(8));
+    assertEquals(ints.getOrNull(5), ints.getOrNull(5));
+    assertEquals(3, ints.stats().getHits());
+    assertEquals(3, ints.stats().getMisses());
+
+    List<BitTree<String>> trees = List.of(new DenseBitTree<>(6), new PatriciaBitTree<>(6),
+        new OffHeapBitTree<>(6), new ConcurrentBitTree<>(6), new StrideBitTree<>(6, 4));
+    for (BitTree<String> variant : trees) {
+      load(variant);
+      assertTrue(variant.memoryEstimate() > 0, variant.getClass().getSimpleName());
+    } // for
+    assertEquals(9, trees.get(1).nodeCount());
+    assertEquals(11, trees.get(4).nodeCount());
+    assertEquals(5, trees.get(0).nodeCount());
+    for (BitTree<?> variant : List.<BitTree<?>>of(trees.get(2), trees.get(3),
+        load(new BitTree<String>(6)).freeze())) {
+      assertEquals(stats.getNodes(), variant.nodeCount(), variant.getClass().getSimpleName());
+    } // for
+    trees.get(3).remove(0b100000);
+    assertEquals(stats.getNodes() - 1, trees.get(3).nodeCount());
+
+    // Removing mappings should bring the counts back down, to nothing
+    // for an empty tree.
+    BitTree<String> linked = new BitTree<>(16);
+    OffHeapBitTree<String> offHeap = new OffHeapBitTree<>(16);
+    for (BitTree<String> variant : List.of(linked, offHeap)) {
+      variant.set(0x1234, "a");
+      variant.set(0x1235, "b");
+      variant.remove(0x1234);
+    } // for
+    assertEquals(linked.nodeCount(), offHeap.nodeCount());
+    for (int key = 0; key < 1000; key++) {
+      offHeap.set(key, "v");
+    } // for
+    for (int key = 0; key < 1000; key++) {
+      offHeap.remove(key);
+    } // for
+    offHeap.remove(0x1235);
+    assertEquals(0, offHeap.size());
+    assertEquals(0, offHeap.nodeCount());
+    assertEquals(0, new OffHeapBitTree<String>(16).nodeCount());
+    assertEquals(0, new ConcurrentBitTree<String>(16).nodeCount());
+  } // testStats()
+
+  /**
+   * Primitive trees should store values already decoded and dump
+   * them in the form they were loaded.
+   */
+  @Test
+  public void testPrimitiveValues() {
+    CharBitTree unicode = new CharBitTree(6, 16);
+    unicode.load(new ByteArrayInputStream("000000,2800\n100000,2801\n".getBytes()));
+    assertEquals('\u2801', unicode.getChar(0b100000));
+    assertEquals("000000,2800\n100000,2801\n", dump(unicode).replace("\r", ""));
+    CharBitTree ascii = (CharBitTree) load(new CharBitTree(6));
+    assertEquals('W', ascii.getChar(0b010111));
+    assertEquals(dump(load(new BitTree<>(6))), dump(ascii));
+    IntBitTree numbers = new IntBitTree(4);
+    numbers.setInt(3, -7);
+    assertEquals(-7, numbers.getInt(3));
+    assertThrows(IndexOutOfBoundsException.class, () -> numbers.getInt(4));
+  } // testPrimitiveValues()
+
+  /**
+   * Loading should accept blank lines and CRLF line endings, and should
+   * report malformed lines by number.
+   */
+  @Test
+  public void testLoadErrors() {
+    BitTree<String> tree = new BitTree<>(3);
+    tree.load(new ByteArrayInputStream("000,a,b\r\n\n111,\n101,x".getBytes()));
+    assertEquals("a,b", tree.get("000"));
+    assertEquals("", tree.get("111"));
+    assertEquals("x", tree.get("101"));
+    for (String bad : new String[] {"000,a\n0000,b\n", "000,a\n00,b\n", "000,a\n010\n",
+        "000,a\n0x0,b\n"}) {
+      IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+          () -> tree.load(new ByteArrayInputStream(bad.getBytes())));
+      assertTrue(e.getMessage().contains("line 2"), e.getMessage());
+    } // for
+    IntBitTree numbers = new IntBitTree(2);
+    assertThrows(IllegalArgumentException.class,
+        () -> numbers.load(new ByteArrayInputStream("00,1\n01,one\n".getBytes())));
+  } // testLoadErrors()
+
+  /**
+   * Mapped snapshots should hold the same mappings as the trees they
+   * were written from, however their nodes are split into mappings,
+   * and corrupt snapshots should be rejected with an IOException.
+   *
+   * @param dir
+   *   A temporary directory for the snapshots.
+   * @throws IOException
+   *   If the snapshots cannot be written or read.
+   */
+  @Test
+  public void testSnapshot(@TempDir Path dir) throws IOException {
+    BitTree<String> tree = load(new BitTree<>(6));
+    BitTreeSnapshot.write(tree, dir.resolve("b2a.bts"));
+    BitTree<String> mapped = BitTreeSnapshot.map(dir.resolve("b2a.bts"));
+    assertEquals(dump(tree), dump(mapped));
+    assertEquals("W", mapped.get("010111"));
+    assertThrows(IndexOutOfBoundsException.class, () -> mapped.get("111111"));
+    assertThrows(UnsupportedOperationException.class, () -> mapped.set("111111", "?"));
+    assertEquals(5, mapped.size());
+
+    CharBitTree unicode = new CharBitTree(6, 16);
+    unicode.load(new ByteArrayInputStream(BrailleAsciiTables.b2u.getBytes()));
+    BitTreeSnapshot.write(unicode, dir.resolve("b2u.bts"));
+    BitTree<Character> mappedUnicode =
+        BitTreeSnapshot.map(dir.resolve("b2u.bts"), BitTreeCodec.codePoints(16));
+    assertEquals(dump(unicode), dump(mappedUnicode));
+
+    BitTree<String> deep = new PatriciaBitTree<>(64);
+    Random random = new Random(207);
+    for (int i = 0; i < 1000; i++) {
+      deep.set(random.nextLong(), "v" + (i % 10));
+    } // for
+    BitTreeSnapshot.write(deep, dir.resolve("deep.bts"));
+    assertEquals(dump(deep), dump(BitTreeSnapshot.map(dir.resolve("deep.bts"))));
+    assertEquals(dump(deep), dump(BitTreeSnapshot.map(dir.resolve("deep.bts"),
+        BitTreeCodec.strings(), 12)));
+
+    BitTreeSnapshot.write(new BitTree<String>(1), dir.resolve("empty.bts"));
+    assertEquals("", dump(BitTreeSnapshot.map(dir.resolve("empty.bts"))));
+
+    // Corrupt headers and values are reported, not thrown as whatever
+    // the decoder happens to trip over.
+    byte[] good = Files.readAllBytes(dir.resolve("b2a.bts"));
+    int[][] corruptions = {{8, 0}, {8, 65}, {12, -1}, {12, 1 << 30}, {16, -1},
+                           {16, 1 << 30}, {20, -1}, {20, 1 << 30}};
+    for (int[] corruption : corruptions) {
+      byte[] bad = good.clone();
+      ByteBuffer.wrap(bad).putInt(corruption[0], corruption[1]);
+      Files.write(dir.resolve("bad.bts"), bad);
+      assertThrows(IOException.class, () -> BitTreeSnapshot.map(dir.resolve("bad.bts")));
+    } // for
+    Files.write(dir.resolve("short.bts"), Arrays.copyOf(good, 12));
+    assertThrows(IOException.class, () -> BitTreeSnapshot.map(dir.resolve("short.bts")));
+
+    // Corrupt nodes are reported when a lookup or scan reaches them.
+    // The root comes first among the nodes, which end the file.
+    int nodeCount = ByteBuffer.wrap(good).getInt(16);
+    int rootOffset = good.length - 2 * Integer.BYTES * nodeCount;
+    for (int corruption : new int[] {nodeCount, -1 - 5, Integer.MIN_VALUE}) {
+      byte[] bad = good.clone();
+      ByteBuffer.wrap(bad).putInt(rootOffset + Integer.BYTES, corruption);
+      Files.write(dir.resolve("bad.bts"), bad);
+      BitTree<String> corrupt = BitTreeSnapshot.map(dir.resolve("bad.bts"));
+      assertEquals("W", corrupt.get("010111"));
+      assertThrows(IllegalStateException.class, () -> corrupt.getOrNull(0b100000));
+      assertThrows(IllegalStateException.class, () -> dump(corrupt));
+    } // for
+  } // testSnapshot(Path)
+
+  /**
+   * Building a tree on several threads should give the same tree as
+   * loading it sequentially, with later mappings winning.
+   *
+   * @param dir
+   *   A temporary directory for the mapping files.
+   * @throws IOException
+   *   If the files cannot be written or read.
+   */
+  @Test
+  public void testParallelLoad(@TempDir Path dir) throws IOException {
+    Random random = new Random(207);
+    StringBuilder text = new StringBuilder("00000000000000000101,first\n");
+    for (int i = 0; i < 200_000; i++) {
+      text.append(String.format("%20s", Integer.toBinaryString(random.nextInt(1 << 20)))
+          .replace(' ', '0')).append(",v").append(i % 1000).append('\n');
+    } // for
+    text.append("00000000000000000101,last");
+    Path file = dir.resolve("big.csv");
+    Files.writeString(file, text);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    BitTree<String> parallel = BitTreeBuilder.load(file, 20, BitTreeCodec.strings(), pool);
+    BitTree<String> sequential = new BitTree<>(20);
+    sequential.load(file);
+    assertEquals(dump(sequential), dump(parallel));
+    assertEquals(sequential.size(), parallel.size());
+    assertEquals(1002, parallel.valuePool().distinct());
+    assertEquals(200_002, parallel.valuePool().interned());
+    Map<String, String> seen = new HashMap<>();
+    parallel.forEach((value, bits) -> assertSame(seen.computeIfAbsent(value, v -> value), value));
+    assertEquals("last", parallel.get(5));
+
+    Files.writeString(dir.resolve("small.csv"), B2A);
+    assertEquals(dump(load(new BitTree<>(6))),
+        dump(BitTreeBuilder.load(dir.resolve("small.csv"), 6, BitTreeCodec.strings(), pool)));
+    Files.writeString(dir.resolve("bad.csv"), "000,a\n001,b\n01,c\n");
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+        () -> BitTreeBuilder.load(dir.resolve("bad.csv"), 3, BitTreeCodec.strings(), pool));
+    assertTrue(e.getMessage().contains("line 3"), e.getMessage());
+    Files.writeString(dir.resolve("late.csv"), text + "\n0101,short\n");
+    e = assertThrows(IllegalArgumentException.class,
+        () -> BitTreeBuilder.load(dir.resolve("late.csv"), 20, BitTreeCodec.strings(), pool));
+    assertEquals("Malformed mapping on line 200003: key of 4 bits instead of 20",
+        e.getMessage());
+    pool.shutdown();
+  } // testParallelLoad(Path)
+
 } // class TestBitTree